@@ -0,0 +1,4855 @@
+package CodeAuthSDK;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
+
+public final class CodeAuth {
+
+    private static String Endpoint;
+    private static String ProjectID;
+    private static RequestEncoder Encoder;
+    private static boolean UseCache;
+    private static long CacheDurationNanos;
+    private static long CacheMaxStaleNanos;
+    private static double CacheJitter;
+    private static int BatchConcurrency;
+    private static long RequestTimeoutNanos;
+
+    // hedging of read only calls
+    private static boolean HedgeRequests;
+    // scans json many bytes at a time (simd_json), or null to scan byte by byte
+    private static ByteScanner Scanner;
+    private static double HedgePercentile;
+    private static long HedgeMinDelayNanos;
+    private static Budget HedgeBudget;
+
+    // retries of transient failures
+    private static int RetryMaxAttempts;
+    private static long RetryBaseDelayNanos;
+    private static long RetryMaxDelayNanos;
+    private static Set<String> RetryOptIn;
+    private static Budget RetryBudget;
+
+    // endpoints of the project, each with its own circuit breaker (at most 64)
+    private static Route[] Routes;
+    private static long SlowStartNanos;
+
+    // client side rate limit of every api (indexed by Api.ordinal())
+    private static RateLimiter[] RateLimiters;
+    private static long RateLimitMaxWaitNanos;
+
+    // caps the calls in flight
+    private static ConcurrencyLimiter Concurrency;
+    // caps the calls in flight of every api group (indexed by Group.ordinal())
+    private static ConcurrencyLimiter[] Bulkheads;
+    private static final CopyOnWriteArrayList<CircuitBreakerListener> circuitBreakerListeners = new CopyOnWriteArrayList<>();
+
+    // timers (hedges, backoff, ...). a single daemon thread, tasks must not block
+    private static ScheduledThreadPoolExecutor Scheduler;
+    private static volatile boolean HasInitialized = false;
+
+    // a lock instead of synchronized so Initialize never pins a virtual thread carrier
+    private static final ReentrantLock InitLock = new ReentrantLock();
+
+    // executor used for http callbacks and fan-out work (null = jdk default)
+    private static Executor WorkExecutor;
+    // whether the SDK created WorkExecutor (use_virtual_threads), and so shuts it down
+    private static boolean OwnsWorkExecutor;
+
+    // sends the api calls (HttpTransport unless set in the options)
+    private static Transport ApiTransport;
+
+    // connections opened ahead of the first calls, and kept open while idle
+    private static int WarmConnections;
+    private static long WarmTimeoutNanos;
+    private static volatile CompletableFuture<Boolean> WarmUpDone;
+    private static volatile boolean Warm;
+    // set while a warm up runs. a new one for every Initialize, so a warm up left running by Shutdown never holds up
+    // (or reports to) the next one
+    private static volatile AtomicBoolean warmingUp = new AtomicBoolean();
+
+    // session cache
+    private static SessionCache sessionCache;
+
+    // in flight '/session/info' calls, so concurrent misses for the same token share one upstream call
+    private static final ConcurrentHashMap<String, SessionInfoFlight> sessionInfoInFlight = new ConcurrentHashMap<>();
+
+    // --- Internal classes ---
+    private enum Api {
+        SIGNIN_EMAIL("/signin/email", "email", null, false, Group.SIGNIN),
+        SIGNIN_EMAIL_VERIFY("/signin/emailverify", "email", "code", false, Group.SIGNIN),
+        SIGNIN_SOCIAL("/signin/social", "social_type", null, true, Group.SIGNIN),
+        SIGNIN_SOCIAL_VERIFY("/signin/socialverify", "social_type", "authorization_code", false, Group.SIGNIN),
+        SESSION_INFO("/session/info", "session_token", null, true, Group.SESSION),
+        SESSION_REFRESH("/session/refresh", "session_token", null, false, Group.SESSION),
+        SESSION_INVALIDATE("/session/invalidate", "session_token", "invalidate_type", false, Group.INVALIDATE);
+
+        final String path;
+        // the request's fields besides project_id, the second one is null when there is only one
+        final String firstField;
+        final String secondField;
+        // safe to send more than once (read only)
+        final boolean idempotent;
+        final Group group;
+        final LatencyTracker latency = new LatencyTracker();
+
+        Api(String path, String firstField, String secondField, boolean idempotent, Group group) {
+            this.path = path;
+            this.firstField = firstField;
+            this.secondField = secondField;
+            this.idempotent = idempotent;
+            this.group = group;
+        }
+    }
+
+    // apis isolated in their own bulkhead, in priority order: session validation gates every authenticated request
+    // and must never starve, sign in is user triggered (and abusable) so it is shed first
+    private enum Group {
+        SESSION,
+        INVALIDATE,
+        SIGNIN
+    }
+
+    // recent response times of an api, used to pick the hedging delay
+    private static final class LatencyTracker {
+        private static final int SIZE = 256;
+        private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+        private final AtomicLong count = new AtomicLong();
+        private volatile long[] sorted = null;
+
+        void record(long nanos) {
+            long n = count.getAndIncrement();
+            samples.set((int) (n % SIZE), nanos);
+            // re-sort every 32 samples instead of on every read
+            if (n % 32 == 31) {
+                int size = (int) Math.min(n + 1, SIZE);
+                long[] copy = new long[size];
+                for (int i = 0; i < size; i++) copy[i] = samples.get(i);
+                Arrays.sort(copy);
+                sorted = copy;
+            }
+        }
+
+        // returns -1 until enough samples have been seen
+        long percentile(double percentile) {
+            long[] s = sorted;
+            if (s == null) return -1;
+            int index = (int) Math.ceil(percentile / 100.0 * s.length) - 1;
+            return s[Math.max(0, Math.min(s.length - 1, index))];
+        }
+    }
+
+    // a token bucket that earns a fraction of a token per request and spends a whole token per extra request,
+    // capping extra requests (hedges, retries) to a percentage of the traffic
+    private static final class Budget {
+        private final long earnMillis;
+        private final long maxMillis;
+        private final AtomicLong millis;
+
+        Budget(double percent, int maxTokens) {
+            this.earnMillis = Math.round(Math.max(0, percent) * 10);
+            this.maxMillis = maxTokens * 1000L;
+            this.millis = new AtomicLong(maxMillis);
+        }
+
+        void deposit() {
+            millis.getAndUpdate(m -> Math.min(maxMillis, m + earnMillis));
+        }
+
+        boolean withdraw() {
+            long m;
+            do {
+                m = millis.get();
+                if (m < 1000) return false;
+            } while (!millis.compareAndSet(m, m - 1000));
+            return true;
+        }
+    }
+
+    private static final class SessionCacheData {
+        String email;
+        long expiration;
+        int refreshLeft;
+        // System.nanoTime() until which the entry is served: 'cache_duration' after it was cached, minus its jitter,
+        // and never past 'expiresAt'
+        long freshUntil;
+        // System.nanoTime() at which the session expires by the server's clock, less a safety margin. A session whose
+        // expiration is unknown is never served stale
+        long expiresAt;
+        // place in the SessionCache eviction policy, only touched under its eviction lock (token and weight are set before)
+        String token;
+        int weight;
+        int region;
+        SessionCacheData prev, next;
+        // place in the SessionCache expiry wheel, same lock: the tick it is due in (0 when not filed) and its slot's list
+        long due;
+        SessionCacheData duePrev, dueNext;
+
+        SessionCacheData(String email, long expiration, int refreshLeft) {
+            this.email = email;
+            this.expiration = expiration;
+            this.refreshLeft = refreshLeft;
+            long now = System.nanoTime();
+            long ttl = CacheDurationNanos;
+            if (CacheJitter > 0) ttl -= (long) (ttl * CacheJitter * ThreadLocalRandom.current().nextDouble());
+            if (expiration > 0) {
+                long expiresIn = expirationMillis(expiration) - ServerClock.nowMillis() - ServerClock.MARGIN_MILLIS;
+                this.expiresAt = now + TimeUnit.MILLISECONDS.toNanos(Math.max(-1, Math.min(expiresIn, TimeUnit.DAYS.toMillis(365))));
+                this.freshUntil = now + Math.min(ttl, expiresAt - now);
+            } else {
+                this.freshUntil = now + ttl;
+                this.expiresAt = freshUntil;
+            }
+        }
+
+        boolean isFresh(long now) {
+            return now - freshUntil < 0;
+        }
+
+        // stale entries may still be served when '/session/info' fails, but never past the session's own expiration
+        boolean isServableStale(long now) {
+            return now - freshUntil < CacheMaxStaleNanos && now - expiresAt < 0;
+        }
+
+        // System.nanoTime() after which the entry can no longer be served at all
+        long keepUntil() {
+            return freshUntil + Math.max(0, Math.min(CacheMaxStaleNanos, expiresAt - freshUntil));
+        }
+    }
+
+    // -------
+    // Estimate of the api server's clock, which session expirations are measured against. Each response's 'Date'
+    // header gives a sample of the offset from the local clock, smoothed over time since 'Date' only has a one second
+    // resolution. A sample assumes the server read its clock in the middle of that second and of the round trip
+    // -------
+    private static final class ServerClock {
+        // covers what a sample cannot resolve: the truncated second of 'Date' and an uneven round trip
+        static final long MARGIN_MILLIS = 1000;
+        private static volatile String lastDate;
+        private static volatile long offsetMillis;
+        private static volatile boolean synced;
+
+        // 'Date' only changes once a second, so most responses repeat the last one and are not parsed again
+        static void observe(String date, long roundTripNanos) {
+            if (date == null || date.equals(lastDate)) return;
+            lastDate = date;
+            long serverMillis;
+            try {
+                serverMillis = ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() + 500;
+            } catch (RuntimeException e) {
+                return;
+            }
+            long sample = serverMillis - (System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(roundTripNanos) / 2);
+            long offset = offsetMillis;
+            offsetMillis = synced ? offset + (sample - offset) / 8 : sample;
+            synced = true;
+        }
+
+        static long offsetMillis() {
+            return offsetMillis;
+        }
+
+        // a new Initialize may talk to another server: the next 'Date' sets the offset again instead of being smoothed in
+        static void reset() {
+            lastDate = null;
+            offsetMillis = 0;
+            synced = false;
+        }
+
+        static long nowMillis() {
+            return System.currentTimeMillis() + offsetMillis;
+        }
+    }
+
+    // -------
+    // The session cache: a ConcurrentHashMap kept within a number of entries and/or an estimated size in bytes by a
+    // W-TinyLFU policy. New entries go to a small LRU window (1%), and an entry pushed out of it only takes the place
+    // of the main region's least recent entry if it was asked for more often, by a frequency sketch. The main region
+    // is a segmented LRU: entries read again move from probation to protected (80% of it).
+    // Entries that can no longer be served, fresh or stale, are dropped by a hashed timing wheel of one second ticks
+    // whose slots are intrusive lists: an entry replaced, removed or evicted leaves it at once, so the wheel never
+    // keeps one alive. Reads never depend on it, they check the entry's age themselves.
+    // Reads never lock: they are recorded in striped lossy buffers, and the policy catches up with them and with the
+    // writes, and sweeps the wheel, in whichever thread gets the eviction lock
+    // -------
+    private static final class SessionCache {
+        // estimated bytes of an entry besides the characters of its token and email: the entry, its map node and the two strings
+        private static final int ENTRY_OVERHEAD = 192;
+        private static final int RETIRED = -1, WINDOW = 1, PROBATION = 2, PROTECTED = 3;
+        private static final int READ_BUFFER_SIZE = 16;
+        // the write and drain counters of a read buffer stripe are kept a cache line apart
+        private static final int COUNTERS_PER_STRIPE = 16;
+        private static final int WHEEL_SLOTS = 64;
+        private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final ConcurrentHashMap<String, SessionCacheData> map = new ConcurrentHashMap<>();
+        private final long maxEntries;
+        private final long maxBytes;
+        private final ReentrantLock evictionLock = new ReentrantLock();
+        // entries whose place in the policy must be brought in line with the map: added, replaced or removed
+        private final ConcurrentLinkedQueue<SessionCacheData> writeBuffer = new ConcurrentLinkedQueue<>();
+        private final int stripeMask;
+        private final AtomicReferenceArray<SessionCacheData> readBuffer;
+        private final AtomicLongArray readCounters;
+        private final FrequencySketch sketch;
+        private final Region window;
+        private final Region probation;
+        private final Region protectedRegion;
+        // first entry of every wheel slot, and the last tick swept
+        private final SessionCacheData[] wheel = new SessionCacheData[WHEEL_SLOTS];
+        private final long origin = System.nanoTime();
+        private long tick;
+        private volatile long publishedBytes;
+
+        // 0 means no limit
+        SessionCache(long maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries > 0 ? maxEntries : Long.MAX_VALUE;
+            this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+            long windowEntries = maxEntries > 0 ? Math.max(1, maxEntries / 100) : Long.MAX_VALUE;
+            long windowBytes = maxBytes > 0 ? Math.max(1, maxBytes / 100) : Long.MAX_VALUE;
+            window = new Region(WINDOW, windowEntries, windowBytes);
+            probation = new Region(PROBATION, Long.MAX_VALUE, Long.MAX_VALUE);
+            protectedRegion = new Region(PROTECTED, maxEntries > 0 ? (maxEntries - windowEntries) * 8 / 10 : Long.MAX_VALUE, maxBytes > 0 ? (maxBytes - windowBytes) * 8 / 10 : Long.MAX_VALUE);
+
+            int stripes = 1;
+            while (stripes < 4 * Runtime.getRuntime().availableProcessors() && stripes < 64) stripes <<= 1;
+            stripeMask = stripes - 1;
+            readBuffer = new AtomicReferenceArray<>(stripes * READ_BUFFER_SIZE);
+            readCounters = new AtomicLongArray(stripes * COUNTERS_PER_STRIPE);
+            // sized for the most entries the limits allow, taking 64 characters of token and email for a byte limit
+            long expectedEntries = Math.min(this.maxEntries, this.maxBytes / (ENTRY_OVERHEAD + 64));
+            sketch = new FrequencySketch(maxEntries > 0 || maxBytes > 0 ? expectedEntries : 16384);
+        }
+
+        // a read, counted by the eviction policy
+        SessionCacheData get(String token) {
+            SessionCacheData entry = map.get(token);
+            if (entry != null) recordRead(entry);
+            return entry;
+        }
+
+        // a read that leaves the eviction policy alone
+        SessionCacheData peek(String token) {
+            return map.get(token);
+        }
+
+        void put(String token, SessionCacheData entry) {
+            entry.token = token;
+            entry.weight = ENTRY_OVERHEAD + token.length() + (entry.email != null ? entry.email.length() : 0);
+            SessionCacheData previous = map.put(token, entry);
+            writeBuffer.add(entry);
+            if (previous != null) writeBuffer.add(previous);
+            drain();
+        }
+
+        void remove(String token) {
+            SessionCacheData removed = map.remove(token);
+            if (removed == null) return;
+            writeBuffer.add(removed);
+            drain();
+        }
+
+        boolean remove(String token, SessionCacheData entry) {
+            if (!map.remove(token, entry)) return false;
+            writeBuffer.add(entry);
+            drain();
+            return true;
+        }
+
+        // maintenance for an idle cache, so expired entries do not wait for the next read or write
+        void cleanUp() {
+            drain();
+        }
+
+        long entries() {
+            return map.mappingCount();
+        }
+
+        long bytes() {
+            return publishedBytes;
+        }
+
+        // lossy: when the thread's stripe is full the read is not counted, and the full stripe gets drained
+        private void recordRead(SessionCacheData entry) {
+            int stripe = (Long.hashCode(Thread.currentThread().threadId()) * 0x9E3779B9 >>> 16) & stripeMask;
+            int writes = stripe * COUNTERS_PER_STRIPE;
+            long written = readCounters.get(writes);
+            long pending = written - readCounters.get(writes + COUNTERS_PER_STRIPE / 2);
+            if (pending < READ_BUFFER_SIZE && readCounters.compareAndSet(writes, written, written + 1)) {
+                readBuffer.lazySet(stripe * READ_BUFFER_SIZE + (int) (written & (READ_BUFFER_SIZE - 1)), entry);
+                pending++;
+            }
+            if (pending >= READ_BUFFER_SIZE) drain();
+        }
+
+        // never waits for the lock: its holder looks at the write buffer again after letting go of it
+        private void drain() {
+            while (evictionLock.tryLock()) {
+                try {
+                    drainReads();
+                    drainWrites();
+                    expire(System.nanoTime());
+                    evict();
+                    publishedBytes = window.bytes + probation.bytes + protectedRegion.bytes;
+                } finally {
+                    evictionLock.unlock();
+                }
+                if (writeBuffer.isEmpty()) return;
+            }
+        }
+
+        private void drainReads() {
+            for (int stripe = 0; stripe <= stripeMask; stripe++) {
+                int drains = stripe * COUNTERS_PER_STRIPE + COUNTERS_PER_STRIPE / 2;
+                long drained = readCounters.get(drains);
+                long written = readCounters.get(stripe * COUNTERS_PER_STRIPE);
+                for (; drained < written; drained++) {
+                    int slot = stripe * READ_BUFFER_SIZE + (int) (drained & (READ_BUFFER_SIZE - 1));
+                    SessionCacheData entry = readBuffer.get(slot);
+                    // claimed but not stored yet, picked up by the next drain
+                    if (entry == null) break;
+                    readBuffer.lazySet(slot, null);
+                    onRead(entry);
+                }
+                readCounters.lazySet(drains, drained);
+            }
+        }
+
+        private void onRead(SessionCacheData entry) {
+            if (entry.region <= 0) return;
+            sketch.increment(entry.token.hashCode());
+            if (entry.region == WINDOW) {
+                window.moveToLast(entry);
+            } else if (entry.region == PROTECTED) {
+                protectedRegion.moveToLast(entry);
+            } else {
+                probation.unlink(entry);
+                protectedRegion.linkLast(entry);
+                while (protectedRegion.over()) {
+                    SessionCacheData demoted = protectedRegion.head;
+                    protectedRegion.unlink(demoted);
+                    probation.linkLast(demoted);
+                }
+            }
+        }
+
+        // the map is the truth: an entry still mapped joins the window, one that is not anymore leaves the policy
+        private void drainWrites() {
+            SessionCacheData entry;
+            while ((entry = writeBuffer.poll()) != null) {
+                boolean mapped = map.get(entry.token) == entry;
+                if (mapped && entry.region == 0) {
+                    sketch.increment(entry.token.hashCode());
+                    window.linkLast(entry);
+                    schedule(entry);
+                } else if (!mapped && entry.region != RETIRED) {
+                    if (entry.region > 0) regionOf(entry).unlink(entry);
+                    entry.region = RETIRED;
+                    unschedule(entry);
+                }
+            }
+        }
+
+        private void evict() {
+            while (window.over()) {
+                SessionCacheData candidate = window.head;
+                window.unlink(candidate);
+                probation.linkLast(candidate);
+                if (!over()) continue;
+                SessionCacheData victim = probation.head != candidate ? probation.head : protectedRegion.head;
+                if (victim != null && sketch.frequency(candidate.token.hashCode()) > sketch.frequency(victim.token.hashCode())) evict(victim);
+                else evict(candidate);
+            }
+            while (over()) {
+                evict(probation.head != null ? probation.head : protectedRegion.head != null ? protectedRegion.head : window.head);
+            }
+        }
+
+        private void evict(SessionCacheData entry) {
+            regionOf(entry).unlink(entry);
+            entry.region = RETIRED;
+            unschedule(entry);
+            if (map.remove(entry.token, entry)) Stats.sessionCacheEvictions.increment();
+        }
+
+        // files the entry under the tick after the one it runs out in, and never one already swept
+        private void schedule(SessionCacheData entry) {
+            entry.due = Math.max((entry.keepUntil() - origin) / TICK_NANOS + 1, tick + 1);
+            int slot = (int) (entry.due % WHEEL_SLOTS);
+            entry.duePrev = null;
+            entry.dueNext = wheel[slot];
+            if (wheel[slot] != null) wheel[slot].duePrev = entry;
+            wheel[slot] = entry;
+        }
+
+        private void unschedule(SessionCacheData entry) {
+            if (entry.due == 0) return;
+            int slot = (int) (entry.due % WHEEL_SLOTS);
+            if (entry.duePrev == null) wheel[slot] = entry.dueNext;
+            else entry.duePrev.dueNext = entry.dueNext;
+            if (entry.dueNext != null) entry.dueNext.duePrev = entry.duePrev;
+            entry.duePrev = null;
+            entry.dueNext = null;
+            entry.due = 0;
+        }
+
+        // sweeps the slots of every tick up to 'now' (at most one rotation). entries due a rotation or more later stay
+        private void expire(long now) {
+            long current = (now - origin) / TICK_NANOS;
+            if (current <= tick) return;
+            long from = Math.max(tick + 1, current - WHEEL_SLOTS + 1);
+            tick = current;
+            for (long swept = from; swept <= current; swept++) {
+                SessionCacheData entry = wheel[(int) (swept % WHEEL_SLOTS)];
+                while (entry != null) {
+                    SessionCacheData next = entry.dueNext;
+                    if (entry.due <= current) {
+                        unschedule(entry);
+                        regionOf(entry).unlink(entry);
+                        entry.region = RETIRED;
+                        map.remove(entry.token, entry);
+                    }
+                    entry = next;
+                }
+            }
+        }
+
+        private boolean over() {
+            return window.entries + probation.entries + protectedRegion.entries > maxEntries || window.bytes + probation.bytes + protectedRegion.bytes > maxBytes;
+        }
+
+        private Region regionOf(SessionCacheData entry) {
+            return entry.region == WINDOW ? window : entry.region == PROBATION ? probation : protectedRegion;
+        }
+
+        // an LRU list of entries, least recent first
+        private static final class Region {
+            final int id;
+            final long maxEntries;
+            final long maxBytes;
+            SessionCacheData head, tail;
+            long entries, bytes;
+
+            Region(int id, long maxEntries, long maxBytes) {
+                this.id = id;
+                this.maxEntries = maxEntries;
+                this.maxBytes = maxBytes;
+            }
+
+            boolean over() {
+                return entries > maxEntries || bytes > maxBytes;
+            }
+
+            void linkLast(SessionCacheData entry) {
+                entry.region = id;
+                entry.prev = tail;
+                entry.next = null;
+                if (tail == null) head = entry;
+                else tail.next = entry;
+                tail = entry;
+                entries++;
+                bytes += entry.weight;
+            }
+
+            void unlink(SessionCacheData entry) {
+                if (entry.prev == null) head = entry.next;
+                else entry.prev.next = entry.next;
+                if (entry.next == null) tail = entry.prev;
+                else entry.next.prev = entry.prev;
+                entry.prev = null;
+                entry.next = null;
+                entries--;
+                bytes -= entry.weight;
+            }
+
+            void moveToLast(SessionCacheData entry) {
+                if (tail == entry) return;
+                unlink(entry);
+                linkLast(entry);
+            }
+        }
+    }
+
+    // -------
+    // Approximate count of how often each token was asked for recently: a count-min sketch of 4 bit counters, 16 to a
+    // long, all halved once the samples reach ten times its width so old popularity fades. Only used under the
+    // SessionCache eviction lock
+    // -------
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long ONE_MASK = 0x1111111111111111L;
+        private final long[] table;
+        private final int sampleSize;
+        // tokens come from callers, so their hashes are salted per instance
+        private final int salt = ThreadLocalRandom.current().nextInt();
+        private int size;
+
+        FrequencySketch(long expectedEntries) {
+            int length = 16;
+            while (length < expectedEntries && length < (1 << 24)) length <<= 1;
+            table = new long[length];
+            sampleSize = 10 * length;
+        }
+
+        void increment(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) added |= incrementAt(indexOf(hash, i), start + i);
+            if (added && ++size == sampleSize) reset();
+        }
+
+        int frequency(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) frequency = Math.min(frequency, (int) (table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xf);
+            return frequency;
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            int offset = counter << 2;
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) == mask) return false;
+            table[index] += 1L << offset;
+            return true;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        private int spread(int x) {
+            x ^= salt;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+
+        private void reset() {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++) {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size - (odd >>> 2)) >>> 1;
+        }
+    }
+
+    private static final class SessionInfoFlight {
+        final CompletableFuture<SessionInfoResult> result = new CompletableFuture<>();
+        // number of callers still interested in the result. the upstream call is aborted when it drops to 0
+        final AtomicInteger waiters = new AtomicInteger(1);
+        // System.nanoTime() at which the upstream call gives up
+        final long deadline;
+        volatile CompletableFuture<SessionInfoResult> call;
+
+        SessionInfoFlight(long deadline) {
+            this.deadline = deadline;
+        }
+
+        // returns false if the flight was already abandoned by all of its callers
+        boolean join() {
+            int w;
+            do {
+                w = waiters.get();
+                if (w <= 0) return false;
+            } while (!waiters.compareAndSet(w, w + 1));
+            return true;
+        }
+    }
+
+    // internal counters, exposed through GetMetrics
+    private static final class Stats {
+        static final LongAdder sessionInfoUpstreamCalls = new LongAdder();
+        static final LongAdder sessionInfoCoalescedCalls = new LongAdder();
+        static final LongAdder sessionInfoCoalescedWaitNanos = new LongAdder();
+        static final LongAccumulator sessionInfoCoalescedWaitMaxNanos = new LongAccumulator(Long::max, 0);
+        static final LongAdder hedgedRequests = new LongAdder();
+        static final LongAdder hedgedRequestsWon = new LongAdder();
+        static final LongAdder retries = new LongAdder();
+        static final LongAdder retriesDeniedByBudget = new LongAdder();
+        static final LongAdder circuitRejectedCalls = new LongAdder();
+        static final LongAdder endpointFailovers = new LongAdder();
+        static final LongAdder sessionInfoStaleServed = new LongAdder();
+        static final LongAdder sessionCacheEvictions = new LongAdder();
+        static final LongAdder rateLimitedCalls = new LongAdder();
+        static final LongAdder rateLimitQueuedCalls = new LongAdder();
+        static final LongAdder concurrencyRejectedCalls = new LongAdder();
+        static final LongAdder concurrencyQueuedCalls = new LongAdder();
+        static final LongAdder[] shedCalls = { new LongAdder(), new LongAdder(), new LongAdder() };
+    }
+
+    // thrown (inside a future) when the client side rate limiter rejects a call
+    private static final class RateLimitedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RateLimitedException() {
+            super("client side rate limit reached", null, false, false);
+        }
+    }
+
+    // -------
+    // Token bucket that refills at 'rate' tokens per second up to 'burst' tokens. A call may reserve a token that is
+    // not there yet, and is then told how long to wait for it. A 429 from the server pauses a limited bucket (for
+    // 'Retry-After', or 1 second) and halves the rate, which then recovers by 5% of the configured rate per second.
+    // Unlimited buckets are never paused: the throttled call's own retry already waits for 'Retry-After'
+    // -------
+    private static final class RateLimiter {
+        private final double configuredRate;
+        private final double burst;
+        private final ReentrantLock lock = new ReentrantLock();
+        private double rate;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long pausedUntil = lastRefill;
+
+        // rate <= 0 means unlimited
+        RateLimiter(double rate, double burst) {
+            this.configuredRate = Math.max(0, rate);
+            this.burst = burst > 0 ? burst : Math.max(1, configuredRate);
+            this.rate = configuredRate;
+            this.tokens = this.burst;
+        }
+
+        // nanoseconds to wait before sending (0 to send now), or -1 if that would be longer than maxWaitNanos
+        long reserve(long maxWaitNanos) {
+            if (configuredRate == 0) return 0;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                long paused = Math.max(0, pausedUntil - now);
+                long wait = tokens >= 1 ? paused : Math.max(paused, (long) ((1 - tokens) / rate * 1e9));
+                if (wait > maxWaitNanos) return -1;
+                tokens -= 1;
+                return wait;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // gives back the token of a reserved call that was never sent
+        void unreserve() {
+            if (configuredRate == 0) return;
+            lock.lock();
+            try {
+                tokens = Math.min(burst, tokens + 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // nanoseconds until a call could be sent without waiting, without reserving anything
+        long nanosUntilAvailable() {
+            if (configuredRate == 0) return 0;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                long paused = Math.max(0, pausedUntil - now);
+                return tokens >= 1 ? paused : Math.max(paused, (long) ((1 - tokens) / rate * 1e9));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onThrottled(long retryAfterNanos) {
+            if (configuredRate == 0) return;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                long until = now + (retryAfterNanos >= 0 ? retryAfterNanos : TimeUnit.SECONDS.toNanos(1));
+                if (until - pausedUntil > 0) pausedUntil = until;
+                rate = Math.max(configuredRate * 0.1, rate * 0.5);
+                tokens = Math.min(tokens, 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // must hold the lock
+        private void refill(long now) {
+            double seconds = (now - lastRefill) / 1e9;
+            lastRefill = now;
+            if (rate < configuredRate && now - pausedUntil > 0) rate = Math.min(configuredRate, rate + configuredRate * 0.05 * seconds);
+            tokens = Math.min(burst, tokens + seconds * rate);
+        }
+    }
+
+    // thrown (inside a future) when the concurrency limiter rejects a call
+    private static final class OverloadedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        OverloadedException() {
+            super("too many calls in flight", null, false, false);
+        }
+    }
+
+    // -------
+    // Caps the number of calls in flight. Used both as the global limiter and as the bulkhead of every api group.
+    // When adaptive, the limit follows the observed round trip time (AIMD): it grows by about 1 per round trip while
+    // calls are fast and it is being used, and shrinks by 10% when a call is dropped (error, timeout, 5xx, 429) or
+    // takes more than 'tolerance' times the best recent round trip time.
+    // Calls over the limit wait in a short queue per priority and free slots go to the most important waiter first.
+    // When the queue is full, a more important call sheds the newest waiter of the least important lane
+    // -------
+    private static final class ConcurrencyLimiter {
+        static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+        private static final double TOLERANCE = 2.0;
+        private static final int MIN_RTT_WINDOW = 500;
+
+        private final boolean enabled;
+        private final boolean adaptive;
+        private final double minLimit;
+        private final double maxLimit;
+        private final int maxQueue;
+        private final long queueTimeoutNanos;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // one lane per Group, index 0 is the most important
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private final ArrayDeque<CompletableFuture<Void>>[] lanes = new ArrayDeque[Group.values().length];
+        private int queued = 0;
+        private volatile double limit;
+        private int inFlight = 0;
+        // best round trip time of the current window, and of the previous one
+        private long windowMinRtt = Long.MAX_VALUE;
+        private long minRtt = Long.MAX_VALUE;
+        private int windowSamples = 0;
+
+        ConcurrencyLimiter(boolean enabled, boolean adaptive, int initialLimit, int minLimit, int maxLimit, int maxQueue, int queueTimeoutMs) {
+            this.enabled = enabled;
+            this.adaptive = adaptive;
+            this.minLimit = Math.max(1, minLimit);
+            this.maxLimit = Math.max(this.minLimit, maxLimit);
+            this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+            this.maxQueue = Math.max(0, maxQueue);
+            this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, queueTimeoutMs));
+            for (int i = 0; i < lanes.length; i++) lanes[i] = new ArrayDeque<>();
+        }
+
+        int limit() {
+            return (int) limit;
+        }
+
+        // GRANTED when a slot was taken right away, otherwise a future that completes once a slot is handed over
+        // (or fails with OverloadedException / TimeoutException)
+        CompletableFuture<Void> acquire(Group group, long deadline) {
+            if (!enabled) return GRANTED;
+            CompletableFuture<Void> waiter;
+            CompletableFuture<Void> shed = null;
+            Group shedGroup = null;
+            lock.lock();
+            try {
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    return GRANTED;
+                }
+                if (queueTimeoutNanos == 0) return reject(group);
+                if (queued >= maxQueue) {
+                    // make room by shedding the newest waiter of a less important lane, if there is one
+                    for (int lane = lanes.length - 1; lane > group.ordinal() && shed == null; lane--) {
+                        shed = lanes[lane].pollLast();
+                        shedGroup = Group.values()[lane];
+                    }
+                    if (shed == null) return reject(group);
+                    queued--;
+                }
+                waiter = new CompletableFuture<>();
+                lanes[group.ordinal()].addLast(waiter);
+                queued++;
+            } finally {
+                lock.unlock();
+            }
+            if (shed != null && shed.completeExceptionally(new OverloadedException())) {
+                Stats.concurrencyRejectedCalls.increment();
+                Stats.shedCalls[shedGroup.ordinal()].increment();
+            }
+
+            Stats.concurrencyQueuedCalls.increment();
+            long wait = Math.min(queueTimeoutNanos, deadline - System.nanoTime());
+            boolean deadlineFirst = wait < queueTimeoutNanos;
+            ScheduledFuture<?> timer = scheduleTimer(waiter, () -> {
+                if (waiter.completeExceptionally(deadlineFirst ? new TimeoutException() : new OverloadedException()) && !deadlineFirst) {
+                    Stats.concurrencyRejectedCalls.increment();
+                    Stats.shedCalls[group.ordinal()].increment();
+                }
+            }, Math.max(0, wait));
+            waiter.whenComplete((v, ex) -> {
+                if (timer != null) timer.cancel(false);
+                if (ex == null) return;
+                lock.lock();
+                try {
+                    if (lanes[group.ordinal()].remove(waiter)) queued--;
+                } finally {
+                    lock.unlock();
+                }
+            });
+            return waiter;
+        }
+
+        // must hold the lock
+        private CompletableFuture<Void> reject(Group group) {
+            Stats.concurrencyRejectedCalls.increment();
+            Stats.shedCalls[group.ordinal()].increment();
+            return CompletableFuture.failedFuture(new OverloadedException());
+        }
+
+        // gives back a slot without a round trip sample (cancelled or rejected call)
+        void release() {
+            if (enabled) handOver();
+        }
+
+        void release(long rttNanos, boolean dropped) {
+            if (!enabled) return;
+            if (adaptive) {
+                lock.lock();
+                try {
+                    if (rttNanos < windowMinRtt) windowMinRtt = rttNanos;
+                    if (++windowSamples >= MIN_RTT_WINDOW) {
+                        // forget old minimums so the limiter follows lasting latency changes
+                        minRtt = windowMinRtt;
+                        windowMinRtt = Long.MAX_VALUE;
+                        windowSamples = 0;
+                    }
+                    long bestRtt = Math.min(minRtt, windowMinRtt);
+                    if (dropped || rttNanos > bestRtt * TOLERANCE) {
+                        limit = Math.max(minLimit, limit * 0.9);
+                    } else if (inFlight * 2 >= limit) {
+                        limit = Math.min(maxLimit, limit + 1 / limit);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            handOver();
+        }
+
+        // frees the caller's slot, handing it straight to the most important waiter if there is room. Waiters are picked
+        // under the lock but completed after it: a granted waiter goes on to take the other limiter's lock and to send
+        // its call, so holding this lock meanwhile would order the bulkhead and global locks both ways and deadlock
+        private void handOver() {
+            int returned = 1;
+            while (returned > 0) {
+                ArrayList<CompletableFuture<Void>> granted = null;
+                lock.lock();
+                try {
+                    inFlight -= returned;
+                    CompletableFuture<Void> next;
+                    while (inFlight < (int) limit && (next = pollWaiter()) != null) {
+                        // the slot is held for the waiter until it is completed
+                        inFlight++;
+                        if (granted == null) granted = new ArrayList<>(2);
+                        granted.add(next);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                returned = 0;
+                if (granted == null) return;
+                // a waiter that already timed out or was cancelled gives its slot back
+                for (CompletableFuture<Void> waiter : granted) {
+                    if (!waiter.complete(null)) returned++;
+                }
+            }
+        }
+
+        // the oldest waiter of the most important lane. must hold the lock
+        private CompletableFuture<Void> pollWaiter() {
+            for (ArrayDeque<CompletableFuture<Void>> lane : lanes) {
+                CompletableFuture<Void> next = lane.pollFirst();
+                if (next != null) {
+                    queued--;
+                    return next;
+                }
+            }
+            return null;
+        }
+    }
+
+    // thrown (inside a future) when a call needs a timer after Shutdown, so it ends instead of waiting for one
+    private static final class ShutdownException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ShutdownException() {
+            super("CodeAuth was shut down", null, false, false);
+        }
+    }
+
+    // thrown (inside a future) when the circuit breaker rejects a call
+    private static final class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException() {
+            super("circuit breaker is open", null, false, false);
+        }
+    }
+
+    // -------
+    // Closed: calls flow and their outcomes go into a sliding window of the last 'window' calls. Once the failure rate
+    // or the slow call rate crosses its threshold the breaker opens. Open: calls are rejected until 'openDuration'
+    // has passed. Half open: a few trial calls are let through, closing the breaker if they all succeed and
+    // re-opening it otherwise.
+    // A call holds the permit it was let through with. Only outcomes of calls let through since the last change of
+    // state count, and only trial calls count toward (or give back) the half open state
+    // -------
+    private static final class CircuitBreaker {
+        static final class Permit {
+            // the breaker's state changes so far when the call was let through
+            final long period;
+            final boolean trial;
+
+            Permit(long period, boolean trial) {
+                this.period = period;
+                this.trial = trial;
+            }
+        }
+
+        private static final Permit DISABLED = new Permit(-1, false);
+
+        private final String endpoint;
+        private final boolean enabled;
+        private final int minCalls;
+        private final double failureRateThreshold;
+        private final double slowCallRateThreshold;
+        private final long slowCallNanos;
+        private final long openDurationNanos;
+        private final int halfOpenCalls;
+
+        // a lock rather than synchronized so a waiting virtual thread is never pinned
+        private final ReentrantLock lock = new ReentrantLock();
+        private final byte[] window;
+        private int windowIndex = 0;
+        private int windowCount = 0;
+        private int failures = 0;
+        private int slowCalls = 0;
+        private volatile CircuitState state = CircuitState.CLOSED;
+        private long openUntil;
+        private int halfOpenPermits;
+        private int halfOpenSuccesses;
+        private long period;
+        // the permit of every call that is not a trial, until the state changes. set before 'state' so a call that
+        // reads CLOSED without the lock never gets an older one
+        private volatile Permit shared = new Permit(0, false);
+        // when the breaker last closed again after being open
+        private volatile boolean recovered = false;
+        private volatile long recoveredAt;
+
+        private static final byte FAILED = 1;
+        private static final byte SLOW = 2;
+
+        CircuitBreaker(String endpoint, InitializeOptions options) {
+            this.endpoint = endpoint;
+            this.enabled = options.circuit_breaker;
+            this.window = new byte[Math.max(1, options.circuit_window_size)];
+            this.minCalls = Math.max(1, Math.min(window.length, options.circuit_min_calls));
+            this.failureRateThreshold = options.circuit_failure_rate_threshold;
+            this.slowCallRateThreshold = options.circuit_slow_call_rate_threshold;
+            this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, options.circuit_slow_call_ms));
+            this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, options.circuit_open_duration_ms));
+            this.halfOpenCalls = Math.max(1, options.circuit_half_open_calls);
+        }
+
+        CircuitState state() {
+            return state;
+        }
+
+        boolean hasRecovered() {
+            return recovered;
+        }
+
+        long recoveredAt() {
+            return recoveredAt;
+        }
+
+        // whether trial calls are due: open for long enough, or half open with trial permits left
+        boolean probeDue() {
+            if (!enabled || state == CircuitState.CLOSED) return false;
+            lock.lock();
+            try {
+                if (state == CircuitState.OPEN) return System.nanoTime() - openUntil >= 0;
+                return state == CircuitState.HALF_OPEN && halfOpenPermits < halfOpenCalls;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // the permit to send a call now, null when the call is rejected
+        Permit tryAcquire() {
+            if (!enabled) return DISABLED;
+            if (state == CircuitState.CLOSED) return shared;
+            CircuitState from = null;
+            Permit permit = null;
+            lock.lock();
+            try {
+                if (state == CircuitState.OPEN && System.nanoTime() - openUntil >= 0) {
+                    from = transition(CircuitState.HALF_OPEN);
+                }
+                if (state == CircuitState.CLOSED) {
+                    permit = shared;
+                } else if (state == CircuitState.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+                    halfOpenPermits++;
+                    permit = new Permit(period, true);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (from != null) notifyListeners(from, CircuitState.HALF_OPEN);
+            return permit;
+        }
+
+        // an acquired call was cancelled before it finished, so it says nothing about the endpoint's health
+        void onCancel(Permit permit) {
+            if (!enabled || !permit.trial) return;
+            lock.lock();
+            try {
+                if (permit.period == period && halfOpenPermits > 0) halfOpenPermits--;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // a call cut short by its caller's deadline: a slow call if it ran long enough to be one, otherwise as if cancelled
+        void onDeadline(Permit permit, long durationNanos) {
+            if (durationNanos >= slowCallNanos) onResult(permit, durationNanos, false);
+            else onCancel(permit);
+        }
+
+        void onResult(Permit permit, long durationNanos, boolean failed) {
+            if (!enabled) return;
+            boolean slow = durationNanos >= slowCallNanos;
+            CircuitState from = null;
+            CircuitState to = null;
+            lock.lock();
+            try {
+                if (permit.period != period) {
+                    // let through before the last change of state, so it is not about the current one
+                } else if (state == CircuitState.HALF_OPEN && permit.trial) {
+                    if (failed || slow) {
+                        from = transition(CircuitState.OPEN);
+                    } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                        from = transition(CircuitState.CLOSED);
+                    }
+                } else if (state == CircuitState.CLOSED) {
+                    byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+                    if (windowCount == window.length) {
+                        byte evicted = window[windowIndex];
+                        if ((evicted & FAILED) != 0) failures--;
+                        if ((evicted & SLOW) != 0) slowCalls--;
+                    } else {
+                        windowCount++;
+                    }
+                    window[windowIndex] = outcome;
+                    windowIndex = (windowIndex + 1) % window.length;
+                    if (failed) failures++;
+                    if (slow) slowCalls++;
+
+                    if (windowCount >= minCalls && (failures * 100.0 / windowCount >= failureRateThreshold || slowCalls * 100.0 / windowCount >= slowCallRateThreshold)) {
+                        from = transition(CircuitState.OPEN);
+                    }
+                }
+                to = state;
+            } finally {
+                lock.unlock();
+            }
+            if (from != null) notifyListeners(from, to);
+        }
+
+        // must hold the lock. returns the previous state
+        private CircuitState transition(CircuitState to) {
+            CircuitState from = state;
+            shared = new Permit(++period, false);
+            state = to;
+            if (to == CircuitState.OPEN) openUntil = System.nanoTime() + openDurationNanos;
+            if (to == CircuitState.HALF_OPEN) {
+                halfOpenPermits = 0;
+                halfOpenSuccesses = 0;
+            }
+            if (to == CircuitState.CLOSED && from != CircuitState.CLOSED) {
+                recoveredAt = System.nanoTime();
+                recovered = true;
+            }
+            if (to == CircuitState.CLOSED) {
+                windowIndex = 0;
+                windowCount = 0;
+                failures = 0;
+                slowCalls = 0;
+            }
+            return from;
+        }
+
+        private void notifyListeners(CircuitState from, CircuitState to) {
+            for (CircuitBreakerListener listener : circuitBreakerListeners) {
+                try {
+                    listener.OnStateChange(endpoint, from, to);
+                } catch (RuntimeException e) {
+                    // a faulty listener must not break api calls
+                }
+            }
+        }
+    }
+
+    // -------
+    // One endpoint of the project. Calls go to the endpoint with the lowest cost: its smoothed (EWMA) response time,
+    // scaled by the calls it has in flight and by its smoothed error rate. The error rate fades with time so an endpoint
+    // that stopped failing is tried again, and an endpoint whose circuit breaker just closed again only gets a growing
+    // share of the calls during the slow start period
+    // -------
+    private static final class Route {
+        private static final double ALPHA = 0.1;
+        private static final long ERROR_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+        final String endpoint;
+        final CircuitBreaker breaker;
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // 0 until the first response, so every endpoint is tried early on
+        private volatile double ewmaRtt = 0;
+        private volatile double ewmaErrors = 0;
+        private volatile long lastSample = System.nanoTime();
+        // when a call last succeeded, 0 before the first one
+        private volatile long lastAnswer = 0;
+
+        Route(String endpoint, InitializeOptions options) {
+            this.endpoint = endpoint;
+            this.breaker = new CircuitBreaker(endpoint, options);
+        }
+
+        void record(long rttNanos, boolean failed) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                double errors = errorRate(now);
+                ewmaErrors = errors + ALPHA * ((failed ? 1 : 0) - errors);
+                ewmaRtt = ewmaRtt == 0 ? rttNanos : ewmaRtt + ALPHA * (rttNanos - ewmaRtt);
+                lastSample = now;
+                if (!failed) lastAnswer = now;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private double errorRate(long now) {
+            return ewmaErrors * Math.exp(-(double) (now - lastSample) / ERROR_DECAY_NANOS);
+        }
+
+        // whether a call succeeded within the last 'nanos', which kept a connection to the endpoint open
+        boolean answeredWithin(long now, long nanos) {
+            long answer = lastAnswer;
+            return answer != 0 && now - answer < nanos;
+        }
+
+        double cost(long now) {
+            return Math.max(1, ewmaRtt) * (inFlight.get() + 1) / Math.max(0.01, 1 - errorRate(now));
+        }
+
+        // whether this call should skip the endpoint because it is still in its slow start: the share of calls it gets
+        // grows linearly from 0 to all of them
+        boolean slowStarting(long now) {
+            if (!breaker.hasRecovered() || SlowStartNanos == 0) return false;
+            long elapsed = now - breaker.recoveredAt();
+            return elapsed < SlowStartNanos && ThreadLocalRandom.current().nextLong(SlowStartNanos) >= elapsed;
+        }
+    }
+
+    // -------
+    // Picks the endpoint of the next call among those not yet 'tried' (a bit per index of Routes), and takes its circuit
+    // breaker permit. Endpoints whose breaker wants trial calls come first, so a failed endpoint is probed with a few
+    // calls and can recover. Then the cheapest endpoints, those in slow start last. Returns null when every breaker
+    // rejects the call
+    // -------
+    private static Admission acquireRoute(long tried) {
+        Route[] routes = Routes;
+        if (routes.length == 1) return tried == 0 ? Admission.of(routes[0]) : null;
+
+        for (int i = 0; i < routes.length; i++) {
+            if ((tried & (1L << i)) != 0 || !routes[i].breaker.probeDue()) continue;
+            Admission admission = Admission.of(routes[i]);
+            if (admission != null) return admission;
+        }
+
+        long now = System.nanoTime();
+        Route[] candidates = new Route[routes.length];
+        double[] costs = new double[routes.length];
+        int count = 0;
+        for (int i = 0; i < routes.length; i++) {
+            if ((tried & (1L << i)) != 0) continue;
+            Route route = routes[i];
+            double cost = route.cost(now) + (route.slowStarting(now) ? Double.MAX_VALUE / 2 : 0);
+            // insertion sort, there are only a few endpoints
+            int j = count++;
+            for (; j > 0 && costs[j - 1] > cost; j--) {
+                candidates[j] = candidates[j - 1];
+                costs[j] = costs[j - 1];
+            }
+            candidates[j] = route;
+            costs[j] = cost;
+        }
+        for (int i = 0; i < count; i++) {
+            Admission admission = Admission.of(candidates[i]);
+            if (admission != null) return admission;
+        }
+        return null;
+    }
+
+    // -------
+    // The endpoint a call goes to, and the permit its circuit breaker let the call through with
+    // -------
+    private static final class Admission {
+        final Route route;
+        final CircuitBreaker.Permit permit;
+
+        private Admission(Route route, CircuitBreaker.Permit permit) {
+            this.route = route;
+            this.permit = permit;
+        }
+
+        static Admission of(Route route) {
+            CircuitBreaker.Permit permit = route.breaker.tryAcquire();
+            return permit != null ? new Admission(route, permit) : null;
+        }
+
+        void onCancel() {
+            route.breaker.onCancel(permit);
+        }
+    }
+
+    private static int routeIndex(Route route) {
+        Route[] routes = Routes;
+        for (int i = 0; i < routes.length; i++) {
+            if (routes[i] == route) return i;
+        }
+        return -1;
+    }
+
+    // --- Public option classes ---
+
+    /**
+     * Advanced options for Initialize. Every field has a sensible default.
+     */
+    public static class InitializeOptions {
+        /** Sends the api calls. null uses an HttpTransport configured by these options. An InMemoryTransport tests or benchmarks the SDK without a network. */
+        public Transport transport = null;
+        /** Whether to negotiate HTTP/2 (multiplexes all calls over a single connection). Falls back to HTTP/1.1 when the server does not support it. */
+        public boolean use_http2 = true;
+        /** Maximum number of calls in flight at once, and so of HTTP/1.1 connections open to the api. Calls over it wait like those over concurrency_max_limit (concurrency_max_queue, concurrency_queue_timeout_ms). 0 means no limit. */
+        public int pool_size = 0;
+        /** Run blocking work and http callbacks on an SDK-owned virtual thread per task executor. Recommended when your application itself runs on virtual threads. */
+        public boolean use_virtual_threads = false;
+        /** Number of selector threads of a NioTransport. */
+        public int nio_selector_threads = 1;
+        /** Number of persistent connections a NioTransport keeps to every endpoint. */
+        public int nio_connections = 4;
+        /** Maximum number of requests a NioTransport writes on a connection before their responses come back (HTTP/1.1 pipelining). Only idempotent calls ('/session/info', '/signin/social') are pipelined. 1 disables pipelining. */
+        public int nio_pipeline_depth = 16;
+        /** Your own executor for http callbacks and fan-out work. Takes precedence over use_virtual_threads. The SDK never shuts it down. */
+        public Executor executor = null;
+        /** Maximum number of '/session/info' calls a single SessionInfoBatch keeps in flight at once. */
+        public int batch_concurrency = 16;
+        /** How long (in seconds) a session may be served from cache after 'cache_duration' has passed, when '/session/info' fails (connection error, timeout, open circuit breaker). Such results have 'stale' set. Never past the session's expiration. 0 disables it. */
+        public int cache_max_stale = 0;
+        /** Shortens the cache lifetime of every session by a random fraction up to this (0 to 1), so sessions cached together do not all expire together and hit the api in a burst. 0 disables it. */
+        public double cache_jitter = 0;
+        /** Maximum number of sessions kept in the cache. Past it, the sessions least likely to be asked for again (by how recently and how often they were) are evicted. 0 means no limit. */
+        public int cache_max_entries = 100_000;
+        /** Maximum estimated memory (in bytes) of the sessions kept in the cache, enforced along with cache_max_entries. 0 means no limit. */
+        public long cache_max_bytes = 0;
+        /** Maximum time to establish a connection (dns, tcp and tls), in milliseconds. */
+        public int connect_timeout_ms = 5000;
+        /** Maximum size (in bytes) of a response body. Larger responses fail the call with a connection_error instead of being buffered. */
+        public int max_response_bytes = 1024 * 1024;
+        /** Scan response json many bytes at a time with the incubating Vector API. Needs the jvm flag '--add-modules jdk.incubator.vector', without it the regular byte by byte scanning is used. */
+        public boolean simd_json = false;
+        /** Default time limit of a whole call, in milliseconds. Calls that run out of time return 'timeout_error'. Can be overridden per call with a Deadline. */
+        public int request_timeout_ms = 10000;
+        /** Hedge read only calls ('/session/info', '/signin/social'): when the first attempt is slower than usual, send a second one and use whichever answers first. */
+        public boolean hedge_requests = false;
+        /** Response time percentile (of recent calls) after which a hedged attempt is sent. */
+        public double hedge_percentile = 95;
+        /** Never send a hedged attempt earlier than this, in milliseconds. */
+        public int hedge_min_delay_ms = 10;
+        /** Maximum extra load from hedging, as a percentage of read only calls. */
+        public double hedge_budget_percent = 5;
+        /** Maximum number of attempts per call (including the first) when it fails with a connection error, 429 or 5xx. 1 disables retries. Read only calls are retried by default; see retry_opt_in for the others. */
+        public int retry_max_attempts = 3;
+        /** Smallest delay between two attempts, in milliseconds. Delays grow exponentially with random (decorrelated) jitter. */
+        public int retry_base_delay_ms = 50;
+        /** Largest delay between two attempts, in milliseconds. A 'Retry-After' from the server takes precedence. */
+        public int retry_max_delay_ms = 2000;
+        /** Paths of calls with side effects that may also be retried, e.g. "/session/invalidate". A retried call may be applied twice by the server. */
+        public Set<String> retry_opt_in = new HashSet<>();
+        /** Maximum extra load from retries, as a percentage of calls. Stops retry storms during outages. */
+        public double retry_budget_percent = 10;
+        /** Whether to fail fast with 'circuit_open' while the endpoint is unhealthy instead of waiting for every call to fail. */
+        public boolean circuit_breaker = true;
+        /** Number of most recent calls the failure and slow call rates are computed over. */
+        public int circuit_window_size = 50;
+        /** Minimum number of calls in the window before the breaker may open. */
+        public int circuit_min_calls = 20;
+        /** Percentage of failed calls (connection errors, timeouts, 5xx) that opens the breaker. */
+        public double circuit_failure_rate_threshold = 50;
+        /** Percentage of slow calls that opens the breaker. */
+        public double circuit_slow_call_rate_threshold = 100;
+        /** Calls slower than this count as slow, in milliseconds. */
+        public int circuit_slow_call_ms = 5000;
+        /** How long the breaker stays open before letting trial calls through, in milliseconds. */
+        public int circuit_open_duration_ms = 10000;
+        /** Number of trial calls let through while half open. They must all succeed to close the breaker. */
+        public int circuit_half_open_calls = 3;
+        /** More endpoints of your project (regional or redundant), besides project_endpoint. Every call goes to the endpoint with the best recent response time and error rate, and fails over to another one when an endpoint cannot be reached. Each endpoint has its own circuit breaker. At most 64 endpoints in total. */
+        public List<String> extra_endpoints = new ArrayList<>();
+        /** After an endpoint's circuit breaker closes again, how long its share of the calls takes to grow back to normal, in milliseconds. 0 sends it its full share right away. */
+        public int endpoint_slow_start_ms = 30000;
+        /** Client side rate limit of every api, in calls per second. 0 means no limit. Keeps bursts from reaching the server and coming back as 'rate_limit_reached'. */
+        public double rate_limit_per_second = 0;
+        /** Per api overrides of rate_limit_per_second, keyed by path, e.g. "/signin/email". */
+        public Map<String, Double> rate_limits = new HashMap<>();
+        /** How many calls may be sent at once after an idle period. 0 means one second worth of calls. */
+        public int rate_limit_burst = 0;
+        /** How long a call may wait for the rate limiter before failing with 'rate_limit_reached', in milliseconds. 0 never waits. */
+        public int rate_limit_max_wait_ms = 0;
+        /** Cap the number of calls in flight with a limit that adapts to the api's response time, failing the overflow fast with 'overloaded'. Keeps the SDK near its best throughput when the api slows down. */
+        public boolean adaptive_concurrency = false;
+        /** Starting limit of calls in flight. */
+        public int concurrency_initial_limit = 20;
+        /** The limit never goes below this. */
+        public int concurrency_min_limit = 1;
+        /** The limit never goes above this. */
+        public int concurrency_max_limit = 200;
+        /** Maximum number of calls waiting for a free slot. Calls beyond it fail with 'overloaded'. */
+        public int concurrency_max_queue = 100;
+        /** Maximum time a call waits for a free slot before failing with 'overloaded', in milliseconds. 0 never waits. */
+        public int concurrency_queue_timeout_ms = 50;
+        /** Isolate each group of apis (session validation, sign in, invalidation) with its own limit of calls in flight and its own queue, so a flood of one (e.g. '/signin/email') cannot take the connections of another. When the SDK is saturated, session validation is served first and sign in is shed first. */
+        public boolean bulkheads = false;
+        /** Maximum calls in flight of '/session/info' and '/session/refresh'. */
+        public int session_max_concurrency = 64;
+        /** Maximum calls in flight of the '/signin/...' apis. */
+        public int signin_max_concurrency = 16;
+        /** Maximum calls in flight of '/session/invalidate'. */
+        public int invalidate_max_concurrency = 16;
+        /** Maximum number of calls waiting in each bulkhead's queue. They wait at most concurrency_queue_timeout_ms. */
+        public int bulkhead_max_queue = 50;
+        /** Number of connections to open (dns, tcp and tls) in the background during Initialize, so the first calls do not pay for the setup. 0 (the default) disables it. HttpTransport opens them with 'HEAD /' requests to the endpoint, which reach your project's server like any call; NioTransport opens them without sending any request. With HTTP/2 they are usually all carried by a single connection. See WhenReady. */
+        public int prewarm_connections = 0;
+        /** Opt-in: how often the pre-warmed connections are touched so they are not closed while idle, in milliseconds. Each time no call went to an endpoint during the interval, HttpTransport sends it prewarm_connections 'HEAD /' requests, which reach your project's server (its logs and rate limits) like any call; NioTransport only reopens the connections the server closed. Should be shorter than the jdk's keep-alive timeout ('jdk.httpclient.keepalive.timeout') and the server's idle timeout. 0 (the default) disables it. */
+        public int keep_warm_interval_ms = 0;
+    }
+
+    /**
+     * A point in time after which a call gives up and returns 'timeout_error'. Pass it to any api call to override 'request_timeout_ms'.
+     */
+    public static final class Deadline {
+        // System.nanoTime() based, so it is not affected by wall clock changes
+        final long nanos;
+
+        private Deadline(long nanos) {
+            this.nanos = nanos;
+        }
+
+        /**
+         * A deadline relative to now
+         * @param timeout How long the call may take
+         * @return
+         */
+        public static Deadline After(Duration timeout) {
+            long nanos;
+            try {
+                nanos = timeout.toNanos();
+            } catch (ArithmeticException e) {
+                nanos = timeout.isNegative() ? Long.MIN_VALUE / 2 : Long.MAX_VALUE / 2;
+            }
+            return new Deadline(System.nanoTime() + Math.max(Long.MIN_VALUE / 2, Math.min(Long.MAX_VALUE / 2, nanos)));
+        }
+
+        /**
+         * An absolute deadline
+         * @param instant When the call must be done
+         * @return
+         */
+        public static Deadline At(Instant instant) {
+            return After(Duration.between(Instant.now(), instant));
+        }
+
+        /**
+         * @return Whether the deadline has already passed
+         */
+        public boolean IsExpired() {
+            return System.nanoTime() - nanos >= 0;
+        }
+    }
+
+    /**
+     * State of the circuit breaker
+     */
+    public enum CircuitState {
+        /** Healthy: every call is sent */
+        CLOSED,
+        /** Unhealthy: every call fails fast with 'circuit_open' */
+        OPEN,
+        /** Recovering: a few trial calls are sent to check if the endpoint is healthy again */
+        HALF_OPEN
+    }
+
+    /**
+     * Gets notified when the circuit breaker changes state
+     */
+    public interface CircuitBreakerListener {
+        /**
+         * Called on the thread that caused the transition. Must not block.
+         * @param endpoint The endpoint whose breaker changed state
+         * @param from The previous state
+         * @param to The new state
+         */
+        void OnStateChange(String endpoint, CircuitState from, CircuitState to);
+    }
+
+    // --- Public result classes  ---
+
+    /**
+     * Snapshot of the SDK's internal counters
+     */
+    public static class Metrics {
+        /** Number of '/session/info' calls actually sent upstream (cache misses that were not coalesced) */
+        public long session_info_upstream_calls;
+        /** Number of SessionInfo cache misses that joined an already in flight call for the same token */
+        public long session_info_coalesced_calls;
+        /** Coalesced misses divided by all misses, between 0 and 1 */
+        public double session_info_coalescing_ratio;
+        /** Average time a coalesced caller waited for the shared call, in milliseconds */
+        public double session_info_coalesced_wait_avg_ms;
+        /** Longest time a coalesced caller waited for the shared call, in milliseconds */
+        public double session_info_coalesced_wait_max_ms;
+        /** Number of hedged (second) attempts sent */
+        public long hedged_requests;
+        /** Number of hedged attempts that answered before the original attempt */
+        public long hedged_requests_won;
+        /** Number of retried attempts sent */
+        public long retries;
+        /** Number of retries that were not sent because the retry budget was exhausted */
+        public long retries_denied_by_budget;
+        /** Current state of the circuit breaker (of the healthiest endpoint when there are several) */
+        public CircuitState circuit_state;
+        /** Number of calls rejected with 'circuit_open' */
+        public long circuit_rejected_calls;
+        /** Number of attempts sent to another endpoint because the chosen one could not be connected to */
+        public long endpoint_failovers;
+        /** Number of SessionInfo results served from a stale cache entry because the api could not be reached */
+        public long session_info_stale_served;
+        /** Number of sessions in the cache */
+        public long session_cache_entries;
+        /** Estimated memory of the cached sessions, in bytes (see InitializeOptions.cache_max_bytes) */
+        public long session_cache_bytes;
+        /** Number of sessions evicted from the cache to stay within cache_max_entries and cache_max_bytes */
+        public long session_cache_evictions;
+        /** Number of attempts rejected by the client side rate limiter with 'rate_limit_reached' */
+        public long rate_limited_calls;
+        /** Number of attempts that waited for the client side rate limiter before being sent */
+        public long rate_limit_queued_calls;
+        /** Current limit of calls in flight set by the adaptive concurrency limiter */
+        public int concurrency_limit;
+        /** Number of calls currently in flight */
+        public int concurrency_in_flight;
+        /** Number of attempts rejected with 'overloaded' by the adaptive concurrency limiter or a bulkhead */
+        public long concurrency_rejected_calls;
+        /** Number of attempts that waited for a free slot before being sent */
+        public long concurrency_queued_calls;
+        /** Number of session validation calls ('/session/info', '/session/refresh') shed with 'overloaded' */
+        public long session_shed_calls;
+        /** Number of sign in calls shed with 'overloaded' */
+        public long signin_shed_calls;
+        /** Number of '/session/invalidate' calls shed with 'overloaded' */
+        public long invalidate_shed_calls;
+        /** Estimated offset of the api server's clock from the local one, in milliseconds (positive when the server is ahead), from the 'Date' header of its responses */
+        public long server_clock_offset_ms;
+    }
+
+    /**
+     * Result of signin email
+     */
+    public static class SignInEmailResult {
+        public String error;
+    }
+
+    /**
+     * Result of signin verify
+     */
+    public static class SignInEmailVerifyResult {
+        public String session_token;
+        public String email;
+        public long expiration;
+        public int refresh_left;
+        public String error;
+    }
+
+    /**
+     * Result of signin social
+     */
+    public static class SignInSocialResult {
+        public String signin_url;
+        public String error;
+    }
+
+    /**
+     * Result of signin social verify
+     */
+    public static class SignInSocialVerifyResult {
+        public String session_token;
+        public String email;
+        public long expiration;
+        public int refresh_left;
+        public String error;
+    }
+
+    /**
+     * Result of session info
+     */
+    public static class SessionInfoResult {
+        public String email;
+        public long expiration;
+        public int refresh_left;
+        public String error;
+        /** True when the session was served from a cache entry past 'cache_duration', because '/session/info' could not be reached (connection error, timeout, open circuit breaker). Only with InitializeOptions.cache_max_stale, and never past the session's expiration. False otherwise. */
+        public boolean stale;
+    }
+
+    /**
+     * Result of session refresh
+     */
+    public static class SessionRefreshResult {
+        public String session_token;
+        public String email;
+        public long expiration;
+        public int refresh_left;
+        public String error;
+    }
+
+    /**
+     * Result of session invalidate
+     */
+    public static class SessionInvalidateResult {
+        public String error;
+    }
+
+    // --- Transports ---
+
+    /**
+     * Sends the api calls of the SDK. Set InitializeOptions.transport to replace the default HttpTransport, e.g. with an
+     * InMemoryTransport to test or benchmark without a network
+     */
+    public interface Transport {
+        /**
+         * Sends a request without blocking. Cancelling the returned future should abort it.
+         * Fail with java.net.ConnectException when the endpoint could not be reached (the request was not sent), the
+         * SDK then fails over to another endpoint. Fail with a java.util.concurrent.TimeoutException when it runs out of time
+         * @param endpoint The endpoint, as given to Initialize or in InitializeOptions.extra_endpoints
+         * @param path The path of the api, e.g. "/session/info"
+         * @param body The json body
+         * @param timeoutNanos The time left for the whole exchange, in nanoseconds
+         * @return The response, whatever its status
+         */
+        CompletableFuture<TransportResponse> SendAsync(String endpoint, String path, byte[] body, long timeoutNanos);
+
+        /**
+         * Sends a request and waits for its response. Fails the way SendAsync does
+         */
+        default TransportResponse Send(String endpoint, String path, byte[] body, long timeoutNanos) throws Exception {
+            try {
+                return SendAsync(endpoint, path, body, timeoutNanos).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) throw cause;
+                throw e;
+            }
+        }
+
+        /**
+         * Opens (or keeps open) connections to an endpoint ahead of the calls. See InitializeOptions.prewarm_connections
+         * @return A future that completes with whether the endpoint was reached
+         */
+        default CompletableFuture<Boolean> WarmUpAsync(String endpoint, int connections, long timeoutNanos) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        /**
+         * Closes the connections and stops the threads of the transport. Called by CodeAuth.Shutdown. Calls sent
+         * afterwards should fail with an IOException
+         */
+        default void Close() {
+        }
+    }
+
+    /**
+     * Response of a Transport
+     */
+    public static class TransportResponse {
+        /** The http status code */
+        public final int status;
+        /** The raw body */
+        public final byte[] body;
+        /** The response headers */
+        public final Map<String, List<String>> headers;
+
+        public TransportResponse(int status, byte[] body, Map<String, List<String>> headers) {
+            this.status = status;
+            this.body = body != null ? body : new byte[0];
+            this.headers = headers != null ? headers : Map.of();
+        }
+
+        /**
+         * Gets the first value of a header, ignoring the case of its name
+         * @return The value, or null when the header is missing
+         */
+        public String Header(String name) {
+            List<String> values = headers.get(name);
+            if (values == null) {
+                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    if (header.getKey().equalsIgnoreCase(name)) {
+                        values = header.getValue();
+                        break;
+                    }
+                }
+            }
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+    }
+
+    // -------
+    // A small pool of scratch buffers to read response bodies of unknown length into, so that the only array allocated
+    // per response is the exactly sized one handed to the caller
+    // -------
+    private static final class ScratchBuffers {
+        private static final int SIZE = 16 * 1024;
+        private static final int MAX_POOLED = 64;
+        private static final ConcurrentLinkedQueue<byte[]> Pool = new ConcurrentLinkedQueue<>();
+        private static final AtomicInteger Pooled = new AtomicInteger();
+
+        static byte[] take() {
+            byte[] buffer = Pool.poll();
+            if (buffer == null) return new byte[SIZE];
+            Pooled.decrementAndGet();
+            return buffer;
+        }
+
+        static void give(byte[] buffer) {
+            if (buffer == null || buffer.length != SIZE) return;
+            if (Pooled.incrementAndGet() > MAX_POOLED) {
+                Pooled.decrementAndGet();
+                return;
+            }
+            Pool.offer(buffer);
+        }
+    }
+
+    /**
+     * The default Transport: https (or http when the endpoint starts with "http://") over the jdk's HttpClient, with
+     * keep-alive pooling and HTTP/2 multiplexing. Configured by InitializeOptions (use_http2, connect_timeout_ms,
+     * executor). The jdk's own pool settings are jvm wide system properties ('jdk.httpclient.connectionPoolSize',
+     * 'jdk.httpclient.keepalive.timeout') and are left to the application
+     */
+    public static final class HttpTransport implements Transport {
+        private final HttpClient client;
+        private final int maxResponseBytes;
+        // uri of every endpoint and path
+        private final ConcurrentHashMap<String, URI> uris = new ConcurrentHashMap<>();
+
+        public HttpTransport(InitializeOptions options) {
+            this(options != null ? options : new InitializeOptions(), options != null ? options.executor : null);
+        }
+
+        HttpTransport(InitializeOptions options, Executor executor) {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(options.use_http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(Math.max(1, options.connect_timeout_ms)));
+            if (executor != null) builder.executor(executor);
+            this.client = builder.build();
+            this.maxResponseBytes = Math.max(0, options.max_response_bytes);
+        }
+
+        private URI uri(String endpoint, String path) {
+            return uris.computeIfAbsent(endpoint + path, key -> URI.create(endpoint.contains("://") ? key : "https://" + key));
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> SendAsync(String endpoint, String path, byte[] body, long timeoutNanos) {
+            HttpRequest request = HttpRequest.newBuilder(uri(endpoint, path))
+                .header("Content-Type", "application/json; charset=utf-8")
+                .timeout(Duration.ofNanos(timeoutNanos))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+            CompletableFuture<java.net.http.HttpResponse<byte[]>> exchange = client.sendAsync(request, info -> new BodyReader(info.headers().firstValueAsLong("Content-Length").orElse(-1), maxResponseBytes));
+            CompletableFuture<TransportResponse> response = exchange.thenApply(r -> new TransportResponse(r.statusCode(), r.body(), r.headers().map()));
+            response.whenComplete((r, ex) -> {
+                if (ex != null) exchange.cancel(true);
+            });
+            return response;
+        }
+
+        // -------
+        // Reads a response body straight into its final array when the server sent its length, and otherwise into a
+        // pooled scratch buffer, copied once at the end. A body larger than 'max_response_bytes' fails the call
+        // -------
+        private static final class BodyReader implements java.net.http.HttpResponse.BodySubscriber<byte[]> {
+            private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+            private final long contentLength;
+            private final int maxBytes;
+            private Flow.Subscription subscription;
+            private byte[] buffer;
+            private boolean pooled;
+            private int length;
+
+            BodyReader(long contentLength, int maxBytes) {
+                this.contentLength = contentLength;
+                this.maxBytes = maxBytes;
+            }
+
+            @Override
+            public CompletionStage<byte[]> getBody() {
+                return result;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                if (contentLength > maxBytes) {
+                    fail(new IOException("response body too large"));
+                    return;
+                }
+                pooled = contentLength < 0;
+                buffer = pooled ? ScratchBuffers.take() : new byte[(int) contentLength];
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> items) {
+                if (result.isDone()) return;
+                for (ByteBuffer item : items) {
+                    int n = item.remaining();
+                    if (length + n > maxBytes) {
+                        fail(new IOException("response body too large"));
+                        return;
+                    }
+                    if (length + n > buffer.length) {
+                        byte[] larger = Arrays.copyOf(buffer, Math.min(maxBytes, Math.max(buffer.length * 2, length + n)));
+                        release();
+                        buffer = larger;
+                    }
+                    item.get(buffer, length, n);
+                    length += n;
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                release();
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                if (result.isDone()) return;
+                byte[] body = !pooled && length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+                release();
+                result.complete(body);
+            }
+
+            private void fail(IOException e) {
+                subscription.cancel();
+                release();
+                result.completeExceptionally(e);
+            }
+
+            private void release() {
+                if (pooled) ScratchBuffers.give(buffer);
+                pooled = false;
+            }
+        }
+
+        // -------
+        // Resolves the endpoint (the result is kept in the jvm's address cache), then sends 'connections' concurrent
+        // HEAD requests, which makes the client open (or reuse, and so keep alive) that many connections. Any http
+        // response counts
+        // -------
+        @Override
+        public CompletableFuture<Boolean> WarmUpAsync(String endpoint, int connections, long timeoutNanos) {
+            URI root = uri(endpoint, "/");
+            // the dns lookup blocks, so it runs on its own virtual thread
+            CompletableFuture<Void> resolved = CompletableFuture.runAsync(() -> {
+                try {
+                    InetAddress.getAllByName(root.getHost());
+                } catch (UnknownHostException e) {
+                    // the warm up requests fail the same way, and report it
+                }
+            }, task -> Thread.ofVirtual().name("codeauth-warmup").start(task));
+
+            return resolved.thenCompose(v -> {
+                HttpRequest request = HttpRequest.newBuilder(root)
+                    .timeout(Duration.ofNanos(timeoutNanos))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+                AtomicBoolean reached = new AtomicBoolean();
+                CompletableFuture<?>[] calls = new CompletableFuture<?>[connections];
+                for (int i = 0; i < calls.length; i++) {
+                    calls[i] = client.sendAsync(request, java.net.http.HttpResponse.BodyHandlers.discarding())
+                        .orTimeout(timeoutNanos, TimeUnit.NANOSECONDS)
+                        .handle((response, ex) -> {
+                            if (ex == null) reached.set(true);
+                            return null;
+                        });
+                }
+                return CompletableFuture.allOf(calls).thenApply(done -> reached.get());
+            });
+        }
+
+        @Override
+        public void Close() {
+            client.shutdownNow();
+        }
+    }
+
+    /**
+     * A lean Transport built directly on NIO SocketChannels and SSLEngine: a few selector threads, persistent
+     * connections and HTTP/1.1 pipelining (requests are written back to back without waiting for the previous
+     * response). Only idempotent calls are pipelined: a call with side effects is written on an idle connection, so
+     * it never fails because of the calls around it. Tuned for many tiny json calls, it skips most of the generic
+     * machinery of HttpClient. Configured by InitializeOptions (nio_selector_threads, nio_connections,
+     * nio_pipeline_depth, connect_timeout_ms, executor)
+     */
+    public static final class NioTransport implements Transport {
+        private static final int MAX_HEAD = 64 * 1024;
+        private static final long CHECK_INTERVAL_MS = 50;
+        private static final byte[] CRLF = { '\r', '\n' };
+        private static final byte[] HEAD_END = { '\r', '\n', '\r', '\n' };
+        private static final Executor RESOLVER = task -> Thread.ofVirtual().name("codeauth-nio-resolver").start(task);
+        // paths of the apis that are safe to pipeline (read only)
+        private static final Set<String> IDEMPOTENT_PATHS = idempotentPaths();
+
+        // lane states
+        private static final int CLOSED = 0;
+        private static final int RESOLVING = 1;
+        private static final int CONNECTING = 2;
+        private static final int HANDSHAKING = 3;
+        private static final int OPEN = 4;
+
+        private final EventLoop[] loops;
+        private final int connections;
+        private final int pipelineDepth;
+        private final int maxResponseBytes;
+        private final long connectTimeoutNanos;
+        private final SSLContext sslContext;
+        // completes the response futures, so callbacks never run on (and stall) a selector thread
+        private final Executor completions;
+        // the completions executor when the transport created it (and so shuts it down), otherwise null
+        private final ExecutorService ownCompletions;
+        private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<>();
+        private final AtomicInteger nextLoop = new AtomicInteger();
+        private volatile boolean closed;
+
+        public NioTransport(InitializeOptions options) throws IOException {
+            this(options, null);
+        }
+
+        /**
+         * @param options Options, or null for the defaults
+         * @param ssl_context The tls configuration (trusted certificates, ...), or null for the jvm's default
+         */
+        public NioTransport(InitializeOptions options, SSLContext ssl_context) throws IOException {
+            if (options == null) options = new InitializeOptions();
+            try {
+                this.sslContext = ssl_context != null ? ssl_context : SSLContext.getDefault();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("no tls support", e);
+            }
+            this.connections = Math.max(1, options.nio_connections);
+            this.pipelineDepth = Math.max(1, options.nio_pipeline_depth);
+            this.maxResponseBytes = Math.max(0, options.max_response_bytes);
+            this.connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, options.connect_timeout_ms));
+            this.ownCompletions = options.executor != null ? null : Executors.newVirtualThreadPerTaskExecutor();
+            this.completions = options.executor != null ? options.executor : ownCompletions;
+            this.loops = new EventLoop[Math.max(1, options.nio_selector_threads)];
+            for (int i = 0; i < loops.length; i++) loops[i] = new EventLoop("codeauth-nio-" + i);
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> SendAsync(String endpoint, String path, byte[] body, long timeoutNanos) {
+            if (closed) return CompletableFuture.failedFuture(new IOException("transport closed"));
+            Pool pool = pools.computeIfAbsent(endpoint, Pool::new);
+            Request request = new Request(pool.encode(path, body), System.nanoTime() + timeoutNanos, IDEMPOTENT_PATHS.contains(path));
+            pool.dispatch(request);
+            return request.future;
+        }
+
+        // -------
+        // Opens the first 'connections' connections of the endpoint (tcp, and the tls handshake) without sending any
+        // request. Connections already open count as reached right away, those the server closed are opened again
+        // -------
+        @Override
+        public CompletableFuture<Boolean> WarmUpAsync(String endpoint, int connections, long timeoutNanos) {
+            if (closed) return CompletableFuture.completedFuture(false);
+            Pool pool = pools.computeIfAbsent(endpoint, Pool::new);
+            AtomicBoolean reached = new AtomicBoolean();
+            CompletableFuture<?>[] opened = new CompletableFuture<?>[Math.min(Math.max(1, connections), pool.lanes.length)];
+            for (int i = 0; i < opened.length; i++) {
+                Lane lane = pool.lanes[i];
+                CompletableFuture<Boolean> ready = new CompletableFuture<>();
+                lane.loop.execute(() -> lane.warmUp(ready));
+                opened[i] = ready.completeOnTimeout(false, timeoutNanos, TimeUnit.NANOSECONDS).thenAccept(open -> {
+                    if (open) reached.set(true);
+                });
+            }
+            return CompletableFuture.allOf(opened).thenApply(done -> reached.get());
+        }
+
+        // -------
+        // Fails the calls in flight and the waiting ones, closes the connections, stops the selector threads, then the
+        // completions executor when the transport created it
+        // -------
+        @Override
+        public void Close() {
+            if (closed) return;
+            closed = true;
+            for (EventLoop loop : loops) loop.stop();
+            boolean interrupted = false;
+            for (EventLoop loop : loops) {
+                while (loop.thread.isAlive()) {
+                    try {
+                        loop.thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (ownCompletions != null) ownCompletions.shutdown();
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        private static Set<String> idempotentPaths() {
+            Set<String> paths = new HashSet<>();
+            for (Api api : Api.values()) {
+                if (api.idempotent) paths.add(api.path);
+            }
+            return Set.copyOf(paths);
+        }
+
+        private static final class Request {
+            final byte[] bytes;
+            final long deadline;
+            final boolean idempotent;
+            final CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+            // failed past its deadline while in flight: its response is still read, and dropped
+            boolean timedOut;
+
+            Request(byte[] bytes, long deadline, boolean idempotent) {
+                this.bytes = bytes;
+                this.deadline = deadline;
+                this.idempotent = idempotent;
+            }
+        }
+
+        // -------
+        // A selector thread. Every lane (and its connection) belongs to one loop and is only touched by its thread
+        // -------
+        private static final class EventLoop implements Runnable {
+            final Selector selector;
+            final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+            final ArrayList<Lane> lanes = new ArrayList<>();
+            // set while a wakeup is already on its way, so a burst of tasks costs a single wakeup
+            final AtomicBoolean wakeupPending = new AtomicBoolean();
+            final Thread thread;
+            volatile boolean stopped;
+            // set once the thread is done: the tasks that still come only fail their request, and run on the caller
+            volatile boolean drained;
+
+            EventLoop(String name) throws IOException {
+                this.selector = Selector.open();
+                this.thread = new Thread(this, name);
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            void execute(Runnable task) {
+                tasks.add(task);
+                if (drained) runTasks();
+                else if (!wakeupPending.getAndSet(true)) selector.wakeup();
+            }
+
+            void stop() {
+                stopped = true;
+                selector.wakeup();
+            }
+
+            private void runTasks() {
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+            }
+
+            @Override
+            public void run() {
+                while (!stopped) {
+                    try {
+                        selector.select(CHECK_INTERVAL_MS);
+                        wakeupPending.set(false);
+                        Runnable task;
+                        while ((task = tasks.poll()) != null) task.run();
+                        for (SelectionKey key : selector.selectedKeys()) ((Lane) key.attachment()).onReady(key);
+                        selector.selectedKeys().clear();
+                        long now = System.nanoTime();
+                        for (Lane lane : lanes) lane.checkTimeouts(now);
+                    } catch (IOException | RuntimeException e) {
+                        // a broken key or a bug must not stop the other connections
+                    }
+                }
+                runTasks();
+                IOException cause = new IOException("transport closed");
+                for (Lane lane : lanes) lane.shutdown(cause);
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // nothing left to release
+                }
+                drained = true;
+                runTasks();
+            }
+        }
+
+        // -------
+        // The connections to one endpoint, and how requests are spread over them
+        // -------
+        private final class Pool {
+            final String host;
+            final int port;
+            final boolean tls;
+            final String authority;
+            final Lane[] lanes;
+            // request line and headers up to the content length, of every path
+            final ConcurrentHashMap<String, byte[]> heads = new ConcurrentHashMap<>();
+
+            Pool(String endpoint) {
+                URI uri = URI.create(endpoint.contains("://") ? endpoint : "https://" + endpoint);
+                this.tls = !"http".equalsIgnoreCase(uri.getScheme());
+                this.host = uri.getHost();
+                this.port = uri.getPort() != -1 ? uri.getPort() : (tls ? 443 : 80);
+                this.authority = uri.getRawAuthority();
+                this.lanes = new Lane[connections];
+                for (int i = 0; i < lanes.length; i++) lanes[i] = new Lane(this, loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)]);
+            }
+
+            byte[] encode(String path, byte[] body) {
+                byte[] head = heads.computeIfAbsent(path, p -> ("POST " + p + " HTTP/1.1\r\nHost: " + authority + "\r\nContent-Type: application/json; charset=utf-8\r\nContent-Length: ").getBytes(StandardCharsets.ISO_8859_1));
+                byte[] length = (body.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                byte[] request = Arrays.copyOf(head, head.length + length.length + body.length);
+                System.arraycopy(length, 0, request, head.length, length.length);
+                System.arraycopy(body, 0, request, head.length + length.length, body.length);
+                return request;
+            }
+
+            // the connection with the fewest outstanding requests gets the request
+            void dispatch(Request request) {
+                Lane lane = lanes[0];
+                for (int i = 1; i < lanes.length; i++) {
+                    if (lanes[i].outstanding.get() < lane.outstanding.get()) lane = lanes[i];
+                }
+                lane.outstanding.incrementAndGet();
+                Lane target = lane;
+                target.loop.execute(() -> target.enqueue(request));
+                request.future.whenComplete((r, ex) -> {
+                    if (request.future.isCancelled()) target.loop.execute(() -> target.cancel(request));
+                });
+            }
+        }
+
+        // -------
+        // One persistent connection, reopened when needed. Up to 'pipelineDepth' requests are written ahead of their
+        // responses, which come back in order. When the connection breaks, the requests already written fail (they may
+        // have reached the server) and the others are sent on a new connection. A request past its deadline fails on its
+        // own; nothing more is pipelined behind it until its late response is read
+        // -------
+        private final class Lane {
+            final Pool pool;
+            final EventLoop loop;
+            final AtomicInteger outstanding = new AtomicInteger();
+            final ArrayDeque<Request> waiting = new ArrayDeque<>();
+            final ArrayDeque<Request> inFlight = new ArrayDeque<>();
+            // requests of 'inFlight' already failed past their deadline
+            int timedOutInFlight;
+            // warm ups waiting for the connection to open
+            final ArrayList<CompletableFuture<Boolean>> opening = new ArrayList<>();
+
+            int state = CLOSED;
+            long connectStarted;
+            SocketChannel channel;
+            SelectionKey key;
+            SSLEngine engine;
+            // reused across connections. out and in hold plaintext (write mode), netOut (read mode) and netIn
+            // (write mode) hold tls records. out, netOut and netIn are direct, the socket and the engine work on them
+            // without a copy; in is a heap buffer because the parser reads its backing array
+            ByteBuffer out = ByteBuffer.allocateDirect(16 * 1024);
+            ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+            ByteBuffer netOut;
+            ByteBuffer netIn;
+
+            // the response being read: status is -1 while reading its head
+            int status = -1;
+            Map<String, List<String>> headers;
+            // -1 chunked, -2 until the connection closes
+            long contentLength;
+            boolean closeAfter;
+            // bytes left in the current chunk, or -1 reading a chunk size, -2 reading the trailers, -3 reading a chunk's crlf
+            long chunkLeft;
+            byte[] body;
+            // whether 'body' is a scratch buffer (the length was not known up front)
+            boolean bodyPooled;
+            int bodyLength;
+
+            Lane(Pool pool, EventLoop loop) {
+                this.pool = pool;
+                this.loop = loop;
+                loop.execute(() -> loop.lanes.add(this));
+            }
+
+            void enqueue(Request request) {
+                if (request.future.isDone()) {
+                    outstanding.decrementAndGet();
+                    return;
+                }
+                if (closed) {
+                    outstanding.decrementAndGet();
+                    request.future.completeExceptionally(new IOException("transport closed"));
+                    return;
+                }
+                waiting.add(request);
+                if (state == CLOSED) connect();
+                else if (state == OPEN) run(this::flush);
+            }
+
+            void warmUp(CompletableFuture<Boolean> ready) {
+                if (closed) {
+                    ready.complete(false);
+                    return;
+                }
+                if (state == OPEN) {
+                    ready.complete(true);
+                    return;
+                }
+                opening.add(ready);
+                if (state == CLOSED) connect();
+            }
+
+            void cancel(Request request) {
+                // a request already written stays in flight, its response is read and dropped
+                if (waiting.remove(request)) outstanding.decrementAndGet();
+            }
+
+            private void connect() {
+                state = RESOLVING;
+                connectStarted = System.nanoTime();
+                // the dns lookup blocks, so it never runs on the selector thread
+                CompletableFuture.supplyAsync(() -> new InetSocketAddress(pool.host, pool.port), RESOLVER)
+                    .whenComplete((address, ex) -> loop.execute(() -> onResolved(address)));
+            }
+
+            private void onResolved(InetSocketAddress address) {
+                if (state != RESOLVING) return;
+                run(() -> {
+                    if (address == null || address.isUnresolved()) throw new ConnectException("unknown host " + pool.host);
+                    channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    state = CONNECTING;
+                    boolean connected = channel.connect(address);
+                    key = channel.register(loop.selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+                    if (connected) onConnected();
+                });
+            }
+
+            private void onConnected() throws IOException {
+                key.interestOps(SelectionKey.OP_READ);
+                if (!pool.tls) {
+                    opened();
+                    flush();
+                    return;
+                }
+                engine = sslContext.createSSLEngine(pool.host, pool.port);
+                engine.setUseClientMode(true);
+                SSLParameters parameters = engine.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                engine.setSSLParameters(parameters);
+                int packetSize = engine.getSession().getPacketBufferSize();
+                if (netOut == null || netOut.capacity() < packetSize) netOut = ByteBuffer.allocateDirect(packetSize);
+                if (netIn == null || netIn.capacity() < packetSize) netIn = ByteBuffer.allocateDirect(packetSize);
+                netOut.clear().limit(0);
+                netIn.clear();
+                state = HANDSHAKING;
+                engine.beginHandshake();
+                process();
+            }
+
+            void onReady(SelectionKey readyKey) {
+                run(() -> {
+                    if (!readyKey.isValid()) return;
+                    if (readyKey.isConnectable()) {
+                        channel.finishConnect();
+                        onConnected();
+                    } else {
+                        if (readyKey.isWritable()) write();
+                        if (readyKey.isReadable()) read();
+                    }
+                    if (state == OPEN && !waiting.isEmpty() && inFlight.size() < pipelineDepth) flush();
+                });
+            }
+
+            // runs a step of the connection, and closes it when the step fails
+            private void run(IoStep step) {
+                try {
+                    step.run();
+                } catch (IOException | RuntimeException e) {
+                    IOException failure = e instanceof IOException io ? io : new IOException(e);
+                    if (state < OPEN) connectFailed(failure);
+                    else close(failure);
+                }
+            }
+
+            // moves waiting requests into the pipeline, then writes. as RFC 9112 asks, nothing is pipelined before or
+            // after a non-idempotent request: if the connection broke, the calls behind it would fail without knowing
+            // whether it ran
+            private void flush() throws IOException {
+                while (inFlight.size() < pipelineDepth && !waiting.isEmpty()) {
+                    Request request = waiting.peek();
+                    if (request.future.isDone()) {
+                        waiting.poll();
+                        outstanding.decrementAndGet();
+                        continue;
+                    }
+                    if (!inFlight.isEmpty() && !(request.idempotent && inFlight.peekLast().idempotent)) break;
+                    // a late response may never come: queueing more behind it would only make them late too
+                    if (timedOutInFlight > 0) break;
+                    waiting.poll();
+                    if (out.remaining() < request.bytes.length) {
+                        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2, out.position() + request.bytes.length));
+                        out.flip();
+                        larger.put(out);
+                        out = larger;
+                    }
+                    out.put(request.bytes);
+                    inFlight.add(request);
+                }
+                write();
+            }
+
+            private void write() throws IOException {
+                if (engine != null) {
+                    process();
+                    return;
+                }
+                out.flip();
+                channel.write(out);
+                boolean more = out.hasRemaining();
+                out.compact();
+                writeInterest(more);
+            }
+
+            private void read() throws IOException {
+                ByteBuffer target = engine != null ? netIn : in;
+                if (!target.hasRemaining()) {
+                    ByteBuffer larger = engine != null ? ByteBuffer.allocateDirect(target.capacity() * 2) : ByteBuffer.allocate(target.capacity() * 2);
+                    target.flip();
+                    larger.put(target);
+                    if (engine != null) netIn = larger;
+                    else in = larger;
+                    target = larger;
+                }
+                if (channel.read(target) < 0) {
+                    // a response without a length ends with the connection
+                    if (status >= 0 && contentLength == -2) complete();
+                    throw new IOException("connection closed by the server");
+                }
+                if (engine != null) process();
+                else parse();
+            }
+
+            // -------
+            // Drives the tls engine as far as it can go without waiting for the network: handshake steps, encrypting
+            // the pending requests and decrypting what was received, then parses the decrypted responses
+            // -------
+            private void process() throws IOException {
+                while (true) {
+                    if (netOut.hasRemaining()) {
+                        channel.write(netOut);
+                        if (netOut.hasRemaining()) {
+                            writeInterest(true);
+                            return;
+                        }
+                    }
+                    SSLEngineResult.HandshakeStatus handshake = engine.getHandshakeStatus();
+                    boolean handshaking = handshake != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && handshake != SSLEngineResult.HandshakeStatus.FINISHED;
+                    if (handshake == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) task.run();
+                    } else if (handshake == SSLEngineResult.HandshakeStatus.NEED_WRAP || (!handshaking && out.position() > 0)) {
+                        out.flip();
+                        netOut.clear();
+                        SSLEngineResult result = engine.wrap(out, netOut);
+                        out.compact();
+                        netOut.flip();
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) throw new IOException("tls session closed");
+                    } else if (handshaking || netIn.position() > 0) {
+                        netIn.flip();
+                        SSLEngineResult result = engine.unwrap(netIn, in);
+                        netIn.compact();
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) throw new IOException("tls session closed by the server");
+                        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                            ByteBuffer larger = ByteBuffer.allocate(in.position() + engine.getSession().getApplicationBufferSize());
+                            in.flip();
+                            larger.put(in);
+                            in = larger;
+                        } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            break;
+                        } else if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                            break;
+                        }
+                    } else {
+                        break;
+                    }
+                }
+                writeInterest(false);
+                SSLEngineResult.HandshakeStatus handshake = engine.getHandshakeStatus();
+                if (state == HANDSHAKING && (handshake == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || handshake == SSLEngineResult.HandshakeStatus.FINISHED)) opened();
+                if (in.position() > 0) parse();
+            }
+
+            private void writeInterest(boolean write) {
+                int ops = SelectionKey.OP_READ | (write ? SelectionKey.OP_WRITE : 0);
+                if (key.interestOps() != ops) key.interestOps(ops);
+            }
+
+            // -------
+            // Parses every complete response in 'in' (and the start of the next one), keeping what is left for later
+            // -------
+            private void parse() throws IOException {
+                byte[] buffer = in.array();
+                int end = in.position();
+                int pos = 0;
+                responses:
+                while (true) {
+                    if (status < 0) {
+                        int headEnd = indexOf(buffer, pos, end, HEAD_END);
+                        if (headEnd < 0) {
+                            if (end - pos > MAX_HEAD) throw new IOException("response head too large");
+                            break;
+                        }
+                        parseHead(buffer, pos, headEnd);
+                        pos = headEnd + HEAD_END.length;
+                        if (status < 200) {
+                            // informational (100 continue, ...), the real response follows
+                            status = -1;
+                            continue;
+                        }
+                        bodyPooled = contentLength < 0;
+                        body = bodyPooled ? ScratchBuffers.take() : new byte[(int) contentLength];
+                        bodyLength = 0;
+                        chunkLeft = -1;
+                    }
+
+                    if (contentLength >= 0) {
+                        int n = (int) Math.min(contentLength - bodyLength, end - pos);
+                        System.arraycopy(buffer, pos, body, bodyLength, n);
+                        bodyLength += n;
+                        pos += n;
+                        if (bodyLength < contentLength) break;
+                        complete();
+                        continue;
+                    }
+                    if (contentLength == -2) {
+                        append(buffer, pos, end - pos);
+                        pos = end;
+                        break;
+                    }
+
+                    // chunked
+                    while (true) {
+                        if (chunkLeft == -1) {
+                            int lineEnd = indexOf(buffer, pos, end, CRLF);
+                            if (lineEnd < 0) break responses;
+                            int sizeEnd = pos;
+                            while (sizeEnd < lineEnd && Character.digit(buffer[sizeEnd], 16) >= 0) sizeEnd++;
+                            if (sizeEnd == pos) throw new IOException("bad chunk size");
+                            long size = Long.parseLong(new String(buffer, pos, sizeEnd - pos, StandardCharsets.ISO_8859_1), 16);
+                            if (bodyLength + size > maxResponseBytes) throw new IOException("response body too large");
+                            pos = lineEnd + CRLF.length;
+                            chunkLeft = size == 0 ? -2 : size;
+                        } else if (chunkLeft == -2) {
+                            int lineEnd = indexOf(buffer, pos, end, CRLF);
+                            if (lineEnd < 0) break responses;
+                            boolean last = lineEnd == pos;
+                            pos = lineEnd + CRLF.length;
+                            if (last) {
+                                complete();
+                                continue responses;
+                            }
+                        } else if (chunkLeft == -3) {
+                            if (end - pos < CRLF.length) break responses;
+                            pos += CRLF.length;
+                            chunkLeft = -1;
+                        } else {
+                            int n = (int) Math.min(chunkLeft, end - pos);
+                            append(buffer, pos, n);
+                            pos += n;
+                            chunkLeft -= n;
+                            if (chunkLeft > 0) break responses;
+                            chunkLeft = -3;
+                        }
+                    }
+                }
+                System.arraycopy(buffer, pos, buffer, 0, end - pos);
+                in.position(end - pos);
+            }
+
+            private void parseHead(byte[] buffer, int from, int to) throws IOException {
+                String[] lines = new String(buffer, from, to - from, StandardCharsets.ISO_8859_1).split("\r\n");
+                String[] statusLine = lines[0].split(" ", 3);
+                if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/1.")) throw new IOException("bad status line");
+                headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                for (int i = 1; i < lines.length; i++) {
+                    int colon = lines[i].indexOf(':');
+                    if (colon <= 0) continue;
+                    headers.computeIfAbsent(lines[i].substring(0, colon).trim(), name -> new ArrayList<>(1)).add(lines[i].substring(colon + 1).trim());
+                }
+                try {
+                    status = Integer.parseInt(statusLine[1]);
+                    String transferEncoding = firstHeader("Transfer-Encoding");
+                    String length = firstHeader("Content-Length");
+                    if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) contentLength = -1;
+                    else if (length != null) contentLength = Long.parseLong(length);
+                    else contentLength = status == 204 || status == 304 ? 0 : -2;
+                } catch (NumberFormatException e) {
+                    throw new IOException("bad response head", e);
+                }
+                if (contentLength > maxResponseBytes) throw new IOException("response body too large");
+                String connection = firstHeader("Connection");
+                closeAfter = connection != null ? connection.equalsIgnoreCase("close") : statusLine[0].equals("HTTP/1.0");
+            }
+
+            private String firstHeader(String name) {
+                List<String> values = headers.get(name);
+                return values == null || values.isEmpty() ? null : values.get(0);
+            }
+
+            private void append(byte[] buffer, int from, int length) throws IOException {
+                if (bodyLength + length > maxResponseBytes) throw new IOException("response body too large");
+                if (bodyLength + length > body.length) {
+                    byte[] larger = Arrays.copyOf(body, Math.max(body.length * 2, bodyLength + length));
+                    releaseBody();
+                    body = larger;
+                }
+                System.arraycopy(buffer, from, body, bodyLength, length);
+                bodyLength += length;
+            }
+
+            private void complete() throws IOException {
+                Request request = inFlight.poll();
+                if (request == null) throw new IOException("unexpected response");
+                outstanding.decrementAndGet();
+                if (request.timedOut) timedOutInFlight--;
+                TransportResponse response = new TransportResponse(status, !bodyPooled && bodyLength == body.length ? body : Arrays.copyOf(body, bodyLength), headers);
+                status = -1;
+                releaseBody();
+                body = null;
+                completions.execute(() -> request.future.complete(response));
+                // the requests behind it are failed, and the waiting ones go out on a new connection
+                if (closeAfter) throw new IOException("connection closed by the server");
+            }
+
+            private void releaseBody() {
+                if (bodyPooled) ScratchBuffers.give(body);
+                bodyPooled = false;
+            }
+
+            void checkTimeouts(long now) {
+                if (state != CLOSED && state < OPEN && now - connectStarted > connectTimeoutNanos) {
+                    connectFailed(new ConnectException("connect timed out"));
+                } else if (state == OPEN) {
+                    // each late request fails alone, the others keep the connection and their own deadlines
+                    for (Request request : inFlight) {
+                        if (request.timedOut || now - request.deadline <= 0) continue;
+                        request.timedOut = true;
+                        timedOutInFlight++;
+                        completions.execute(() -> request.future.completeExceptionally(new HttpTimeoutException("response timed out")));
+                    }
+                    // only late responses are left, maybe never coming: the waiting requests go out on a new connection
+                    if (timedOutInFlight > 0 && timedOutInFlight == inFlight.size() && !waiting.isEmpty()) close(new IOException("response timed out"));
+                }
+            }
+
+            private void opened() {
+                state = OPEN;
+                settleWarmUps(true);
+            }
+
+            private void settleWarmUps(boolean open) {
+                for (CompletableFuture<Boolean> ready : opening) completions.execute(() -> ready.complete(open));
+                opening.clear();
+            }
+
+            // the endpoint could not be reached: nothing was sent, every request fails with a ConnectException
+            private void connectFailed(IOException cause) {
+                ConnectException failure = cause instanceof ConnectException connect ? connect : (ConnectException) new ConnectException(cause.getMessage()).initCause(cause);
+                closeChannel();
+                fail(inFlight, failure);
+                fail(waiting, failure);
+                settleWarmUps(false);
+            }
+
+            // the connection broke: the written requests fail, the waiting ones go out on a new connection
+            private void close(IOException cause) {
+                closeChannel();
+                fail(inFlight, cause);
+                if (!waiting.isEmpty()) connect();
+            }
+
+            // the transport is closing: every request fails
+            void shutdown(IOException cause) {
+                closeChannel();
+                fail(inFlight, cause);
+                fail(waiting, cause);
+                settleWarmUps(false);
+            }
+
+            private void fail(ArrayDeque<Request> requests, IOException cause) {
+                Request request;
+                while ((request = requests.poll()) != null) {
+                    outstanding.decrementAndGet();
+                    Request failed = request;
+                    completions.execute(() -> failed.future.completeExceptionally(cause));
+                }
+            }
+
+            private void closeChannel() {
+                if (key != null) key.cancel();
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        // already broken
+                    }
+                }
+                key = null;
+                channel = null;
+                engine = null;
+                state = CLOSED;
+                timedOutInFlight = 0;
+                status = -1;
+                releaseBody();
+                body = null;
+                out.clear();
+                in.clear();
+                if (netIn != null) netIn.clear();
+                if (netOut != null) netOut.clear().limit(0);
+            }
+        }
+
+        private interface IoStep {
+            void run() throws IOException;
+        }
+
+        private static int indexOf(byte[] buffer, int from, int to, byte[] pattern) {
+            outer:
+            for (int i = from; i <= to - pattern.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (buffer[i + j] != pattern[j]) continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A Transport that never touches the network: every request is answered by a handler, on the calling thread.
+     * Measures the SDK's own overhead in benchmarks, and fakes the api in tests
+     */
+    public static final class InMemoryTransport implements Transport {
+        /**
+         * Answers the requests of an InMemoryTransport
+         */
+        public interface Handler {
+            /**
+             * @param endpoint The endpoint the request was sent to
+             * @param path The path of the api, e.g. "/session/info"
+             * @param body The json body
+             * @return The response. Throwing fails the call like a network error would
+             */
+            TransportResponse Handle(String endpoint, String path, byte[] body) throws Exception;
+        }
+
+        private final Handler handler;
+
+        public InMemoryTransport(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public TransportResponse Send(String endpoint, String path, byte[] body, long timeoutNanos) throws Exception {
+            return handler.Handle(endpoint, path, body);
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> SendAsync(String endpoint, String path, byte[] body, long timeoutNanos) {
+            try {
+                return CompletableFuture.completedFuture(handler.Handle(endpoint, path, body));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    // -------------------------
+    // Initialization
+    // -------------------------
+    /**
+     * Initialize the CodeAuth SDK
+     *
+     * @param project_endpoint The endpoint of your project. This can be found inside your project settings.
+     * @param project_id Your project ID. This can be found inside your project settings.
+     * @param use_cache Whether to use cache or not. Using cache can help speed up response time and mitigate some rate limits. This will automatically cache new session token (from '/signin/emailverify', 'signin/socialverify', 'session/info', 'session/refresh') and automatically delete cache when it is invalidated (from 'session/refresh', 'session/invalidate').
+     * @param cache_duration How long the cache should last. At least 15 seconds required to effectively mitigate most rate limits. Check docs for more info.
+     */
+    public static void Initialize(String project_endpoint, String project_id, boolean use_cache, int cache_duration) {
+        Initialize(project_endpoint, project_id, use_cache, cache_duration, new InitializeOptions());
+    }
+
+    /**
+     * Initialize the CodeAuth SDK with advanced options
+     *
+     * @param project_endpoint The endpoint of your project. This can be found inside your project settings.
+     * @param project_id Your project ID. This can be found inside your project settings.
+     * @param use_cache Whether to use cache or not. Check the other Initialize overload for more info.
+     * @param cache_duration How long the cache should last. At least 15 seconds required to effectively mitigate most rate limits. Check docs for more info.
+     * @param options Advanced options. See InitializeOptions.
+     */
+    public static void Initialize(String project_endpoint, String project_id, boolean use_cache, int cache_duration, InitializeOptions options) {
+        InitLock.lock();
+        try {
+            if (HasInitialized) throw new RuntimeException("CodeAuth has already been initialized");
+            if (options == null) options = new InitializeOptions();
+            Endpoint = project_endpoint;
+            ProjectID = project_id;
+            Encoder = new RequestEncoder(project_id);
+            UseCache = use_cache;
+            BatchConcurrency = Math.max(1, options.batch_concurrency);
+            RequestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, options.request_timeout_ms));
+            HedgeRequests = options.hedge_requests;
+            Scanner = options.simd_json ? loadVectorScanner() : null;
+            HedgePercentile = Math.max(0, Math.min(100, options.hedge_percentile));
+            HedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, options.hedge_min_delay_ms));
+            HedgeBudget = new Budget(options.hedge_budget_percent, 10);
+            RetryMaxAttempts = Math.max(1, options.retry_max_attempts);
+            RetryBaseDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, options.retry_base_delay_ms));
+            RetryMaxDelayNanos = Math.max(RetryBaseDelayNanos, TimeUnit.MILLISECONDS.toNanos(options.retry_max_delay_ms));
+            RetryOptIn = options.retry_opt_in != null ? Set.copyOf(options.retry_opt_in) : Set.of();
+            RetryBudget = new Budget(options.retry_budget_percent, 10);
+            Set<String> endpoints = new LinkedHashSet<>();
+            endpoints.add(project_endpoint);
+            if (options.extra_endpoints != null) endpoints.addAll(options.extra_endpoints);
+            if (endpoints.size() > 64) throw new IllegalArgumentException("CodeAuth supports at most 64 endpoints");
+            Routes = new Route[endpoints.size()];
+            int index = 0;
+            for (String endpoint : endpoints) Routes[index++] = new Route(endpoint, options);
+            ServerClock.reset();
+            SlowStartNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, options.endpoint_slow_start_ms));
+            RateLimiters = new RateLimiter[Api.values().length];
+            for (Api api : Api.values()) {
+                Double rate = options.rate_limits != null ? options.rate_limits.get(api.path) : null;
+                RateLimiters[api.ordinal()] = new RateLimiter(rate != null ? rate : options.rate_limit_per_second, options.rate_limit_burst);
+            }
+            RateLimitMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, options.rate_limit_max_wait_ms));
+            // pool_size caps the calls in flight, and with them the HTTP/1.1 connections the transport opens
+            int poolLimit = options.pool_size > 0 ? options.pool_size : Integer.MAX_VALUE;
+            if (options.adaptive_concurrency) {
+                Concurrency = new ConcurrencyLimiter(true, true, Math.min(options.concurrency_initial_limit, poolLimit), Math.min(options.concurrency_min_limit, poolLimit), Math.min(options.concurrency_max_limit, poolLimit), options.concurrency_max_queue, options.concurrency_queue_timeout_ms);
+            } else {
+                Concurrency = new ConcurrencyLimiter(options.pool_size > 0, false, poolLimit, poolLimit, poolLimit, options.concurrency_max_queue, options.concurrency_queue_timeout_ms);
+            }
+            Bulkheads = new ConcurrencyLimiter[Group.values().length];
+            int[] bulkheadLimits = { options.session_max_concurrency, options.invalidate_max_concurrency, options.signin_max_concurrency };
+            for (Group group : Group.values()) {
+                int max = bulkheadLimits[group.ordinal()];
+                Bulkheads[group.ordinal()] = new ConcurrencyLimiter(options.bulkheads, false, max, max, max, options.bulkhead_max_queue, options.concurrency_queue_timeout_ms);
+            }
+
+            OwnsWorkExecutor = options.executor == null && options.use_virtual_threads;
+            if (options.executor != null) WorkExecutor = options.executor;
+            else if (options.use_virtual_threads) WorkExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            else WorkExecutor = null;
+            startScheduler();
+            ApiTransport = options.transport != null ? options.transport : new HttpTransport(options, WorkExecutor);
+            startWarmUp(options);
+
+            CacheDurationNanos = TimeUnit.SECONDS.toNanos(Math.max(1, cache_duration));
+            CacheMaxStaleNanos = TimeUnit.SECONDS.toNanos(Math.max(0, options.cache_max_stale));
+            CacheJitter = Math.min(1, Math.max(0, options.cache_jitter));
+            sessionCache = new SessionCache(Math.max(0, options.cache_max_entries), Math.max(0, options.cache_max_bytes));
+            if (use_cache) startCacheMaintenance();
+            HasInitialized = true;
+        } finally {
+            InitLock.unlock();
+        }
+    }
+
+    public static void Initialize(String project_endpoint, String project_id) {
+        Initialize(project_endpoint, project_id, true, 30);
+    }
+
+    /**
+     * Stops the CodeAuth SDK: its timers, the threads and connections of its transport (a transport given in
+     * InitializeOptions.transport included) and the executor it created for use_virtual_threads. Calls still in flight
+     * fail with "connection_error". Initialize can be called again afterwards, e.g. with new options
+     */
+    public static void Shutdown() {
+        InitLock.lock();
+        try {
+            if (!HasInitialized) return;
+            HasInitialized = false;
+            Scheduler.shutdown();
+            // a later Initialize must not join the calls of this one
+            sessionInfoInFlight.clear();
+            ApiTransport.Close();
+            if (OwnsWorkExecutor) ((ExecutorService) WorkExecutor).shutdown();
+        } finally {
+            InitLock.unlock();
+        }
+    }
+
+    // -------
+    // The session cache sweeps its expired entries during its own maintenance, which its reads and writes run. For an
+    // idle cache the shared timer asks for it once a second, and the maintenance runs on the work executor, never on
+    // the timer thread
+    // -------
+    private static void startCacheMaintenance() {
+        SessionCache cache = sessionCache;
+        Executor executor = WorkExecutor != null ? WorkExecutor : ForkJoinPool.commonPool();
+        Scheduler.scheduleWithFixedDelay(() -> executor.execute(cache::cleanUp), 1, 1, TimeUnit.SECONDS);
+    }
+
+    // -------
+    // Creates the shared timer thread
+    // -------
+    private static void startScheduler() {
+        Scheduler = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread t = new Thread(task, "codeauth-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        Scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    // -------
+    // Schedules a timer of the call 'pending' on the shared timer thread. After Shutdown the timer is never run:
+    // 'pending' fails right away with a ShutdownException ("connection_error") and null is returned
+    // -------
+    private static ScheduledFuture<?> scheduleTimer(CompletableFuture<?> pending, Runnable task, long delayNanos) {
+        try {
+            return Scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.completeExceptionally(new ShutdownException());
+            return null;
+        }
+    }
+
+    // -------
+    // Resolves the endpoints and opens the pre-warmed connections in the background, then keeps them warm on a timer
+    // -------
+    private static void startWarmUp(InitializeOptions options) {
+        WarmConnections = Math.max(0, options.prewarm_connections);
+        WarmTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, options.connect_timeout_ms)) + RequestTimeoutNanos;
+        warmingUp = new AtomicBoolean();
+        Warm = WarmConnections == 0;
+        if (WarmConnections == 0) {
+            WarmUpDone = CompletableFuture.completedFuture(true);
+            return;
+        }
+
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        WarmUpDone = done;
+        warmUp(0).whenComplete((warm, ex) -> done.complete(ex == null && warm));
+        if (options.keep_warm_interval_ms > 0) {
+            long interval = options.keep_warm_interval_ms;
+            long idleNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+            Scheduler.scheduleWithFixedDelay(() -> warmUp(idleNanos), interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // -------
+    // Warms 'WarmConnections' connections to every endpoint through the transport. Warm ups skip the breakers, the
+    // limiters and the metrics. Completes with whether at least one endpoint was reached. Endpoints that answered a
+    // call within the last 'idleNanos' are already warm and get no request. A tick that comes while the previous warm
+    // up is still running (slow or unreachable endpoint) is skipped
+    // -------
+    private static CompletableFuture<Boolean> warmUp(long idleNanos) {
+        AtomicBoolean running = warmingUp;
+        if (!running.compareAndSet(false, true)) return CompletableFuture.completedFuture(Warm);
+        AtomicBoolean reached = new AtomicBoolean();
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[Routes.length];
+        long now = System.nanoTime();
+        for (int i = 0; i < calls.length; i++) {
+            CompletableFuture<Boolean> call;
+            if (idleNanos > 0 && Routes[i].answeredWithin(now, idleNanos)) {
+                reached.set(true);
+                calls[i] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            try {
+                call = ApiTransport.WarmUpAsync(Routes[i].endpoint, WarmConnections, WarmTimeoutNanos);
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            calls[i] = call.handle((warm, ex) -> {
+                if (ex == null && warm) reached.set(true);
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(calls).thenApply(v -> {
+            if (running == warmingUp) Warm = reached.get();
+            running.set(false);
+            return reached.get();
+        });
+    }
+
+    // -------
+    // Makes sure that the CodeAuth SDK has been initialized
+    // -------
+    private static void ensureInitialized() {
+        if (!HasInitialized) throw new RuntimeException("CodeAuth has not been initialized");
+    }
+
+    // -------------------------
+    // HTTP helpers
+    // -------------------------
+    // -------
+    // Waits for the api's rate limiter (without parking a thread) before sending the request. Calls that would have to
+    // wait longer than 'rate_limit_max_wait_ms', or past their deadline, fail right away
+    // -------
+    private static CompletableFuture<HttpResponse> callApiRequestAsync(Api api, byte[] jsonBody, long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) return CompletableFuture.failedFuture(new TimeoutException());
+
+        RateLimiter limiter = RateLimiters[api.ordinal()];
+        long wait = limiter.reserve(Math.min(RateLimitMaxWaitNanos, remaining));
+        if (wait < 0) {
+            Stats.rateLimitedCalls.increment();
+            return CompletableFuture.failedFuture(new RateLimitedException());
+        }
+        if (wait == 0) return sendApiRequest(api, jsonBody, deadline);
+
+        Stats.rateLimitQueuedCalls.increment();
+        CompletableFuture<HttpResponse> queued = new CompletableFuture<>();
+        // set by the timer when it sends the call, or when the call ends before that (cancelled, timed out), whichever
+        // is first. only the latter gives the token back
+        AtomicBoolean started = new AtomicBoolean();
+        // the timer, then the call. the timer may fire before schedule() returns, so it is only stored if the call is not
+        AtomicReference<Future<?>> current = new AtomicReference<>();
+        ScheduledFuture<?> timer = scheduleTimer(queued, () -> {
+            if (!started.compareAndSet(false, true)) return;
+            CompletableFuture<HttpResponse> call = sendApiRequest(api, jsonBody, deadline);
+            current.set(call);
+            if (queued.isDone()) call.cancel(true);
+            call.whenComplete((r, ex) -> {
+                if (ex != null) queued.completeExceptionally(ex);
+                else queued.complete(r);
+            });
+        }, wait);
+        current.compareAndSet(null, timer);
+        queued.whenComplete((r, ex) -> {
+            if (started.compareAndSet(false, true)) {
+                if (timer != null) timer.cancel(false);
+                limiter.unreserve();
+                return;
+            }
+            Future<?> pending = current.get();
+            if (queued.isCancelled() && pending != null) pending.cancel(true);
+        });
+        return queued;
+    }
+
+    // -------
+    // Sends the request to the best endpoint. When it cannot be connected to (so the request was never sent, and even
+    // a call with side effects is safe to repeat) the request fails over to the next best endpoint
+    // -------
+    private static CompletableFuture<HttpResponse> sendApiRequest(Api api, byte[] jsonBody, long deadline) {
+        if (deadline - System.nanoTime() <= 0) return CompletableFuture.failedFuture(new TimeoutException());
+        Admission admission = acquireRoute(0);
+        if (admission == null) {
+            Stats.circuitRejectedCalls.increment();
+            return CompletableFuture.failedFuture(new CircuitOpenException());
+        }
+        CompletableFuture<HttpResponse> first = sendApiRequest(admission, api, jsonBody, deadline);
+        if (Routes.length == 1) return first;
+
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse>> current = new AtomicReference<>(first);
+        failOver(first, 1L << routeIndex(admission.route), api, jsonBody, deadline, result, current);
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) current.get().cancel(true);
+        });
+        return result;
+    }
+
+    private static void failOver(CompletableFuture<HttpResponse> call, long tried, Api api, byte[] jsonBody, long deadline, CompletableFuture<HttpResponse> result, AtomicReference<CompletableFuture<HttpResponse>> current) {
+        call.whenComplete((r, ex) -> {
+            if (result.isDone()) return;
+            Admission next = ex != null && neverSent(ex) && deadline - System.nanoTime() > 0 ? acquireRoute(tried) : null;
+            if (next == null) {
+                if (ex != null) result.completeExceptionally(ex);
+                else result.complete(r);
+                return;
+            }
+            Stats.endpointFailovers.increment();
+            CompletableFuture<HttpResponse> retry = sendApiRequest(next, api, jsonBody, deadline);
+            current.set(retry);
+            if (result.isDone()) retry.cancel(true);
+            else failOver(retry, tried | 1L << routeIndex(next.route), api, jsonBody, deadline, result, current);
+        });
+    }
+
+    // whether the call timed out because its deadline passed, as opposed to the transport giving up on the endpoint
+    // (connect timeout). timers may fire a little early, hence the slack
+    private static boolean deadlineExpired(Throwable ex, long deadline) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) ex = ex.getCause();
+        boolean timedOut = ex instanceof TimeoutException || (ex instanceof HttpTimeoutException && !(ex instanceof java.net.http.HttpConnectTimeoutException));
+        return timedOut && deadline - System.nanoTime() < TimeUnit.MILLISECONDS.toNanos(2);
+    }
+
+    // whether the request failed before reaching the endpoint (connection refused, unknown host, connect timeout)
+    private static boolean neverSent(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) ex = ex.getCause();
+        return ex instanceof java.net.ConnectException || ex instanceof java.net.http.HttpConnectTimeoutException;
+    }
+
+    // -------
+    // With the endpoint's circuit breaker permit held, takes an in flight slot from the api's bulkhead and from the
+    // concurrency limiter (queueing briefly for them when they are all taken) before sending the request
+    // -------
+    private static CompletableFuture<HttpResponse> sendApiRequest(Admission admission, Api api, byte[] jsonBody, long deadline) {
+        Slots slots = new Slots(Concurrency, Bulkheads[api.group.ordinal()]);
+        CompletableFuture<Void> permit = acquireSlots(slots, api, deadline);
+        if (permit == ConcurrencyLimiter.GRANTED) return exchangeApiRequest(admission, api, slots, jsonBody, deadline);
+
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse>> exchange = new AtomicReference<>();
+        permit.whenComplete((v, ex) -> {
+            if (ex != null) {
+                admission.onCancel();
+                result.completeExceptionally(ex);
+                return;
+            }
+            if (result.isDone()) {
+                // cancelled while queued
+                admission.onCancel();
+                slots.release();
+                return;
+            }
+            CompletableFuture<HttpResponse> call = exchangeApiRequest(admission, api, slots, jsonBody, deadline);
+            exchange.set(call);
+            call.whenComplete((r, callEx) -> {
+                if (callEx != null) result.completeExceptionally(callEx);
+                else result.complete(r);
+            });
+            if (result.isDone()) call.cancel(true);
+        });
+        result.whenComplete((r, ex) -> {
+            if (!result.isCancelled()) return;
+            permit.cancel(true);
+            CompletableFuture<HttpResponse> call = exchange.get();
+            if (call != null) call.cancel(true);
+        });
+        return result;
+    }
+
+    // -------
+    // The limiters a call takes its slots from. The call gives them back to the same ones when it ends, even when
+    // Shutdown and Initialize have replaced the SDK's limiters in the meantime
+    // -------
+    private static final class Slots {
+        final ConcurrencyLimiter concurrency;
+        final ConcurrencyLimiter bulkhead;
+
+        Slots(ConcurrencyLimiter concurrency, ConcurrencyLimiter bulkhead) {
+            this.concurrency = concurrency;
+            this.bulkhead = bulkhead;
+        }
+
+        void release() {
+            concurrency.release();
+            bulkhead.release();
+        }
+
+        void release(long rttNanos, boolean dropped) {
+            concurrency.release(rttNanos, dropped);
+            bulkhead.release();
+        }
+    }
+
+    // -------
+    // Takes a slot from the api's bulkhead, then from the concurrency limiter. Returns GRANTED when both were free,
+    // otherwise a future that completes once both are held. On failure or cancellation nothing is left held.
+    // A limiter never completes a waiter while holding its lock, so neither lock is ever held while taking the other
+    // -------
+    private static CompletableFuture<Void> acquireSlots(Slots slots, Api api, long deadline) {
+        ConcurrencyLimiter bulkhead = slots.bulkhead;
+        CompletableFuture<Void> first = bulkhead.acquire(api.group, deadline);
+        if (first == ConcurrencyLimiter.GRANTED) {
+            CompletableFuture<Void> second = slots.concurrency.acquire(api.group, deadline);
+            if (second != ConcurrencyLimiter.GRANTED) {
+                second.whenComplete((v, ex) -> {
+                    if (ex != null) bulkhead.release();
+                });
+            }
+            return second;
+        }
+
+        CompletableFuture<Void> both = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<Void>> secondRef = new AtomicReference<>();
+        first.whenComplete((v, ex) -> {
+            if (ex != null) {
+                both.completeExceptionally(ex);
+                return;
+            }
+            if (both.isDone()) {
+                bulkhead.release();
+                return;
+            }
+            CompletableFuture<Void> second = slots.concurrency.acquire(api.group, deadline);
+            secondRef.set(second);
+            second.whenComplete((v2, ex2) -> {
+                if (ex2 != null) {
+                    bulkhead.release();
+                    both.completeExceptionally(ex2);
+                } else if (!both.complete(null)) {
+                    slots.release();
+                }
+            });
+            if (both.isDone()) second.cancel(true);
+        });
+        both.whenComplete((v, ex) -> {
+            if (!both.isCancelled()) return;
+            first.cancel(true);
+            CompletableFuture<Void> second = secondRef.get();
+            if (second != null) second.cancel(true);
+        });
+        return both;
+    }
+
+    // no thread is parked while the request is in flight. cancelling the returned future aborts the exchange, and so does
+    // the deadline: it bounds the whole exchange (dns, connect, tls, write and read) and fails it with a TimeoutException.
+    // the caller must hold the endpoint's circuit breaker permit and its slots, they are all given back when the exchange ends
+    private static CompletableFuture<HttpResponse> exchangeApiRequest(Admission admission, Api api, Slots slots, byte[] jsonBody, long deadline) {
+        Route route = admission.route;
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            // the deadline passed while the call queued for its slots: that is not the endpoint's doing
+            admission.onCancel();
+            slots.release();
+            return CompletableFuture.failedFuture(new TimeoutException());
+        }
+        route.inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<TransportResponse> exchange;
+        try {
+            exchange = ApiTransport.SendAsync(route.endpoint, api.path, jsonBody, remaining);
+        } catch (RuntimeException e) {
+            exchange = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<HttpResponse> call = exchange.thenApply(response -> {
+            long roundTrip = System.nanoTime() - start;
+            api.latency.record(roundTrip);
+            ServerClock.observe(response.Header("Date"), roundTrip);
+            return new HttpResponse(response.status, response.body, retryAfterNanos(response.Header("Retry-After")));
+        });
+        call.orTimeout(remaining, TimeUnit.NANOSECONDS);
+        CompletableFuture<TransportResponse> sent = exchange;
+        call.whenComplete((r, ex) -> {
+            if (ex != null) sent.cancel(true);
+            long rtt = System.nanoTime() - start;
+            route.inFlight.decrementAndGet();
+            if (call.isCancelled()) {
+                admission.onCancel();
+                slots.release();
+            } else if (ex != null && deadlineExpired(ex, deadline)) {
+                // the caller stopped waiting, which says how long it could wait rather than how the endpoint is doing
+                route.breaker.onDeadline(admission.permit, rtt);
+                slots.release();
+            } else {
+                route.record(rtt, ex != null || r.statusCode >= 500);
+                route.breaker.onResult(admission.permit, rtt, ex != null || r.statusCode >= 500);
+                slots.release(rtt, ex != null || r.statusCode >= 500 || r.statusCode == 429);
+            }
+            if (r != null && r.statusCode == 429) RateLimiters[api.ordinal()].onThrottled(r.retryAfterNanos);
+        });
+        return call;
+    }
+
+    // -------
+    // Sends a read only call, and when it is slower than the hedge percentile, a second identical attempt.
+    // The first attempt to answer wins and the other one is cancelled. Never used for calls with side effects
+    // -------
+    private static CompletableFuture<HttpResponse> callApiRequestHedged(Api api, byte[] jsonBody, long deadline) {
+        CompletableFuture<HttpResponse> primary = callApiRequestAsync(api, jsonBody, deadline);
+        if (!HedgeRequests || !api.idempotent) return primary;
+
+        HedgeBudget.deposit();
+        long delay = api.latency.percentile(HedgePercentile);
+        if (delay < 0) return primary;
+        delay = Math.max(delay, HedgeMinDelayNanos);
+        if (deadline - System.nanoTime() <= delay) return primary;
+
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse>> hedge = new AtomicReference<>();
+        AtomicInteger attempts = new AtomicInteger(1);
+
+        ScheduledFuture<?> timer = scheduleTimer(result, () -> {
+            if (result.isDone() || !HedgeBudget.withdraw()) return;
+            attempts.incrementAndGet();
+            Stats.hedgedRequests.increment();
+            CompletableFuture<HttpResponse> second = callApiRequestAsync(api, jsonBody, deadline);
+            hedge.set(second);
+            second.whenComplete((r, ex) -> settleHedge(result, attempts, r, ex, true));
+            if (result.isDone()) second.cancel(true);
+        }, delay);
+
+        primary.whenComplete((r, ex) -> settleHedge(result, attempts, r, ex, false));
+        result.whenComplete((r, ex) -> {
+            if (timer != null) timer.cancel(false);
+            primary.cancel(true);
+            CompletableFuture<HttpResponse> second = hedge.get();
+            if (second != null) second.cancel(true);
+        });
+        return result;
+    }
+
+    // the first answer wins. a failure only fails the call once every attempt has failed
+    private static void settleHedge(CompletableFuture<HttpResponse> result, AtomicInteger attempts, HttpResponse response, Throwable ex, boolean isHedge) {
+        if (ex == null) {
+            if (result.complete(response) && isHedge) Stats.hedgedRequestsWon.increment();
+        } else if (attempts.decrementAndGet() == 0) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    private static final class HttpResponse {
+        int statusCode;
+        byte[] body;
+        // how long the server asked us to wait before retrying, -1 if it did not
+        long retryAfterNanos;
+
+        HttpResponse(int statusCode, byte[] body, long retryAfterNanos) {
+            this.statusCode = statusCode;
+            this.body = body != null ? body : new byte[0];
+            this.retryAfterNanos = retryAfterNanos;
+        }
+    }
+
+    // 'Retry-After' is either a number of seconds or an http date
+    private static long retryAfterNanos(String header) {
+        if (header == null) return -1;
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(header.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Instant at = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(0, Duration.between(Instant.now(), at).toNanos());
+            } catch (RuntimeException ex) {
+                return -1;
+            }
+        }
+    }
+
+    // -------
+    // Retries transient failures (connection errors, 429 and 5xx) of calls that are safe to repeat
+    // -------
+    private static CompletableFuture<HttpResponse> callApiRequestRetrying(Api api, byte[] jsonBody, long deadline) {
+        if (RetryMaxAttempts <= 1 || !(api.idempotent || RetryOptIn.contains(api.path))) return callApiRequestHedged(api, jsonBody, deadline);
+        RetryBudget.deposit();
+        return new RetryingCall(api, jsonBody, deadline).start();
+    }
+
+    private static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    private static final class RetryingCall {
+        final Api api;
+        final byte[] jsonBody;
+        final long deadline;
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        // the attempt in flight or the timer of the next one
+        final AtomicReference<Future<?>> current = new AtomicReference<>();
+        // only touched by one attempt at a time
+        int attempts = 0;
+        long previousDelay;
+
+        RetryingCall(Api api, byte[] jsonBody, long deadline) {
+            this.api = api;
+            this.jsonBody = jsonBody;
+            this.deadline = deadline;
+            this.previousDelay = RetryBaseDelayNanos;
+        }
+
+        CompletableFuture<HttpResponse> start() {
+            result.whenComplete((r, ex) -> {
+                Future<?> c = current.get();
+                if (result.isCancelled() && c != null) c.cancel(true);
+            });
+            attempt();
+            return result;
+        }
+
+        void attempt() {
+            if (result.isDone()) return;
+            attempts++;
+            CompletableFuture<HttpResponse> call = callApiRequestHedged(api, jsonBody, deadline);
+            current.set(call);
+            if (result.isDone()) call.cancel(true);
+            else call.whenComplete((response, ex) -> onAttempt(call, response, ex));
+        }
+
+        void onAttempt(CompletableFuture<HttpResponse> call, HttpResponse response, Throwable ex) {
+            if (result.isDone()) return;
+            boolean retryable = ex != null ? failureError(ex).equals("connection_error") : isRetryableStatus(response.statusCode);
+            if (!retryable || attempts >= RetryMaxAttempts) {
+                finish(response, ex);
+                return;
+            }
+
+            // decorrelated jitter: random between the base delay and 3 times the previous delay
+            long delay = RetryBaseDelayNanos + (long) (ThreadLocalRandom.current().nextDouble() * Math.max(0, previousDelay * 3 - RetryBaseDelayNanos));
+            delay = Math.min(RetryMaxDelayNanos, delay);
+            previousDelay = delay;
+            if (response != null && response.retryAfterNanos >= 0) delay = response.retryAfterNanos;
+            // not before the rate limiter (paused by a 429) would let the retry through
+            delay = Math.max(delay, RateLimiters[api.ordinal()].nanosUntilAvailable());
+
+            if (deadline - System.nanoTime() <= delay) {
+                finish(response, ex);
+                return;
+            }
+            if (!RetryBudget.withdraw()) {
+                Stats.retriesDeniedByBudget.increment();
+                finish(response, ex);
+                return;
+            }
+            Stats.retries.increment();
+            // the next attempt may start before schedule() returns, and then the timer must not replace it
+            ScheduledFuture<?> timer = scheduleTimer(result, this::attempt, delay);
+            if (timer == null) return;
+            current.compareAndSet(call, timer);
+            if (result.isDone()) timer.cancel(false);
+        }
+
+        void finish(HttpResponse response, Throwable ex) {
+            if (ex != null) result.completeExceptionally(ex);
+            else result.complete(response);
+        }
+    }
+
+    // -------
+    // Runs an api call and maps the response (or failure) into its result class
+    // -------
+    // blocking callers simply wait for the asynchronous call. this parks (never pins) a virtual thread
+    private static <R> R callApi(Api api, byte[] jsonBody, long deadline, Function<HttpResponse, R> reader, Function<String, R> error) {
+        return callApiAsync(api, jsonBody, deadline, reader, error).join();
+    }
+
+    private static <R> CompletableFuture<R> callApiAsync(Api api, byte[] jsonBody, long deadline, Function<HttpResponse, R> reader, Function<String, R> error) {
+        CompletableFuture<HttpResponse> call;
+        try {
+            call = callApiRequestRetrying(api, jsonBody, deadline);
+        } catch (Exception ex) {
+            return CompletableFuture.completedFuture(error.apply("connection_error"));
+        }
+        return propagateCancel(call.handle((response, ex) -> {
+            if (ex != null) return error.apply(failureError(ex));
+            try {
+                return reader.apply(response);
+            } catch (Exception readEx) {
+                return error.apply("connection_error");
+            }
+        }), call);
+    }
+
+    // -------
+    // Maps an unexpected http status to its error
+    // -------
+    private static String statusError(HttpResponse response) {
+        return response.statusCode == 429 ? "rate_limit_reached" : "connection_error";
+    }
+
+    // -------
+    // Maps a failed call to its error: 'timeout_error' when the deadline passed, 'circuit_open' when the circuit breaker
+    // rejected it, 'connection_error' otherwise
+    // -------
+    private static String failureError(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) ex = ex.getCause();
+        if (ex instanceof TimeoutException || ex instanceof HttpTimeoutException) return "timeout_error";
+        if (ex instanceof CircuitOpenException) return "circuit_open";
+        if (ex instanceof RateLimitedException) return "rate_limit_reached";
+        if (ex instanceof OverloadedException) return "overloaded";
+        return "connection_error";
+    }
+
+    // -------
+    // Converts a public deadline into a System.nanoTime() instant, using the default timeout when there is none
+    // -------
+    private static long deadlineNanos(Deadline deadline) {
+        return deadline != null ? deadline.nanos : System.nanoTime() + RequestTimeoutNanos;
+    }
+
+    // -------
+    // Cancelling a dependent future does not cancel its source, so forward the cancellation manually
+    // -------
+    private static <T> CompletableFuture<T> propagateCancel(CompletableFuture<T> dependent, CompletableFuture<?> source) {
+        dependent.whenComplete((r, ex) -> {
+            if (dependent.isCancelled()) source.cancel(true);
+        });
+        return dependent;
+    }
+
+    // -------------------------
+    // Signin / Email
+    // -------------------------
+    /**
+     * Begins the sign in or register flow by sending the user a one time code via email
+     * @param email The email of the user you are trying to sign in/up. Email must be between 1 and 64 characters long. The email must also only contain letter, number, dot (not first, last, or consecutive), underscore (not first or last) and/or hyphen (not first or last).
+     * @return
+     */
+    public static SignInEmailResult SignInEmail(String email) {
+        return SignInEmail(email, null);
+    }
+
+    /**
+     * Same as SignInEmail, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Returns 'timeout_error' if no answer arrives in time.
+     * @param email The email of the user you are trying to sign in/up. Email must be between 1 and 64 characters long. The email must also only contain letter, number, dot (not first, last, or consecutive), underscore (not first or last) and/or hyphen (not first or last).
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static SignInEmailResult SignInEmail(String email, Deadline deadline) {
+        ensureInitialized();
+        return callApi(Api.SIGNIN_EMAIL, signInEmailBody(email), deadlineNanos(deadline), CodeAuth::readSignInEmail, CodeAuth::signInEmailError);
+    }
+
+    /**
+     * Asynchronous version of SignInEmail. No thread is blocked while the request is in flight, and cancelling the future aborts the request.
+     * @param email The email of the user you are trying to sign in/up.
+     * @return
+     */
+    public static CompletableFuture<SignInEmailResult> SignInEmailAsync(String email) {
+        return SignInEmailAsync(email, null);
+    }
+
+    /**
+     * Same as SignInEmailAsync, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Completes with 'timeout_error' if no answer arrives in time.
+     * @param email The email of the user you are trying to sign in/up.
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static CompletableFuture<SignInEmailResult> SignInEmailAsync(String email, Deadline deadline) {
+        ensureInitialized();
+        return callApiAsync(Api.SIGNIN_EMAIL, signInEmailBody(email), deadlineNanos(deadline), CodeAuth::readSignInEmail, CodeAuth::signInEmailError);
+    }
+
+    private static byte[] signInEmailBody(String email) {
+        return Encoder.encode(Api.SIGNIN_EMAIL, email, null);
+    }
+
+    private static SignInEmailResult readSignInEmail(HttpResponse response) {
+        if (response.statusCode == 200) {
+            return signInEmailError("no_error");
+        } else if (response.statusCode == 400) {
+            return signInEmailError(JsonHelper.read(response.body).error);
+        } else {
+            return signInEmailError(statusError(response));
+        }
+    }
+
+    private static SignInEmailResult signInEmailError(String error) {
+        SignInEmailResult r = new SignInEmailResult();
+        r.error = error;
+        return r;
+    }
+
+    // -------------------------
+    // Signin / Email Verify
+    // -------------------------
+    /**
+     * Checks if the one time code matches in order to create a session token.
+     * @param email The email of the user you are trying to sign in/up. Email must be between 1 and 64 characters long. The email must also only contain letter, number, dot (not first, last, or consecutive), underscore(not first or last) and/or hyphen(not first or last).
+     * @param code The one time code that was sent to the email.
+     * @return
+     */
+    public static SignInEmailVerifyResult SignInEmailVerify(String email, String code) {
+        return SignInEmailVerify(email, code, null);
+    }
+
+    /**
+     * Same as SignInEmailVerify, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Returns 'timeout_error' if no answer arrives in time.
+     * @param email The email of the user you are trying to sign in/up. Email must be between 1 and 64 characters long. The email must also only contain letter, number, dot (not first, last, or consecutive), underscore(not first or last) and/or hyphen(not first or last).
+     * @param code The one time code that was sent to the email.
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static SignInEmailVerifyResult SignInEmailVerify(String email, String code, Deadline deadline) {
+        ensureInitialized();
+        return callApi(Api.SIGNIN_EMAIL_VERIFY, signInEmailVerifyBody(email, code), deadlineNanos(deadline), CodeAuth::readSignInEmailVerify, CodeAuth::signInEmailVerifyError);
+    }
+
+    /**
+     * Asynchronous version of SignInEmailVerify. No thread is blocked while the request is in flight, and cancelling the future aborts the request.
+     * @param email The email of the user you are trying to sign in/up.
+     * @param code The one time code that was sent to the email.
+     * @return
+     */
+    public static CompletableFuture<SignInEmailVerifyResult> SignInEmailVerifyAsync(String email, String code) {
+        return SignInEmailVerifyAsync(email, code, null);
+    }
+
+    /**
+     * Same as SignInEmailVerifyAsync, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Completes with 'timeout_error' if no answer arrives in time.
+     * @param email The email of the user you are trying to sign in/up.
+     * @param code The one time code that was sent to the email.
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static CompletableFuture<SignInEmailVerifyResult> SignInEmailVerifyAsync(String email, String code, Deadline deadline) {
+        ensureInitialized();
+        return callApiAsync(Api.SIGNIN_EMAIL_VERIFY, signInEmailVerifyBody(email, code), deadlineNanos(deadline), CodeAuth::readSignInEmailVerify, CodeAuth::signInEmailVerifyError);
+    }
+
+    private static byte[] signInEmailVerifyBody(String email, String code) {
+        return Encoder.encode(Api.SIGNIN_EMAIL_VERIFY, email, code);
+    }
+
+    private static SignInEmailVerifyResult readSignInEmailVerify(HttpResponse response) {
+        if (response.statusCode == 200) {
+            JsonFields fields = JsonHelper.read(response.body);
+            String sessionToken = fields.sessionToken;
+            String respEmail = fields.email;
+            long expiration = fields.expiration;
+            int refreshLeft = fields.refreshLeft;
+
+            if (UseCache && sessionToken != null) {
+                cacheSession(sessionToken, new SessionCacheData(respEmail, expiration, refreshLeft));
+            }
+
+            SignInEmailVerifyResult r = new SignInEmailVerifyResult();
+            r.session_token = sessionToken;
+            r.email = respEmail;
+            r.expiration = expiration;
+            r.refresh_left = refreshLeft;
+            r.error = "no_error";
+            return r;
+        } else if (response.statusCode == 400) {
+            return signInEmailVerifyError(JsonHelper.read(response.body).error);
+        } else {
+            return signInEmailVerifyError(statusError(response));
+        }
+    }
+
+    private static SignInEmailVerifyResult signInEmailVerifyError(String error) {
+        SignInEmailVerifyResult r = new SignInEmailVerifyResult();
+        r.error = error;
+        return r;
+    }
+
+    // -------------------------
+    // Signin / Social
+    // -------------------------
+    /**
+     * Begins the sign in or register flow by allowing users to sign in through a social OAuth2 link.
+     * @param social_type The type of social OAuth2 url you are trying to create. Possible social types: "google", "microsoft", "apple"
+     * @return
+     */
+    public static SignInSocialResult SignInSocial(String social_type) {
+        return SignInSocial(social_type, null);
+    }
+
+    /**
+     * Same as SignInSocial, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Returns 'timeout_error' if no answer arrives in time.
+     * @param social_type The type of social OAuth2 url you are trying to create. Possible social types: "google", "microsoft", "apple"
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static SignInSocialResult SignInSocial(String social_type, Deadline deadline) {
+        ensureInitialized();
+        return callApi(Api.SIGNIN_SOCIAL, signInSocialBody(social_type), deadlineNanos(deadline), CodeAuth::readSignInSocial, CodeAuth::signInSocialError);
+    }
+
+    /**
+     * Asynchronous version of SignInSocial. No thread is blocked while the request is in flight, and cancelling the future aborts the request.
+     * @param social_type The type of social OAuth2 url you are trying to create. Possible social types: "google", "microsoft", "apple"
+     * @return
+     */
+    public static CompletableFuture<SignInSocialResult> SignInSocialAsync(String social_type) {
+        return SignInSocialAsync(social_type, null);
+    }
+
+    /**
+     * Same as SignInSocialAsync, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Completes with 'timeout_error' if no answer arrives in time.
+     * @param social_type The type of social OAuth2 url you are trying to create. Possible social types: "google", "microsoft", "apple"
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static CompletableFuture<SignInSocialResult> SignInSocialAsync(String social_type, Deadline deadline) {
+        ensureInitialized();
+        return callApiAsync(Api.SIGNIN_SOCIAL, signInSocialBody(social_type), deadlineNanos(deadline), CodeAuth::readSignInSocial, CodeAuth::signInSocialError);
+    }
+
+    private static byte[] signInSocialBody(String social_type) {
+        return Encoder.encode(Api.SIGNIN_SOCIAL, social_type, null);
+    }
+
+    private static SignInSocialResult readSignInSocial(HttpResponse response) {
+        if (response.statusCode == 200) {
+            SignInSocialResult r = new SignInSocialResult();
+            r.signin_url = JsonHelper.read(response.body).signinUrl;
+            r.error = "no_error";
+            return r;
+        } else if (response.statusCode == 400) {
+            return signInSocialError(JsonHelper.read(response.body).error);
+        } else {
+            return signInSocialError(statusError(response));
+        }
+    }
+
+    private static SignInSocialResult signInSocialError(String error) {
+        SignInSocialResult r = new SignInSocialResult();
+        r.error = error;
+        return r;
+    }
+
+    // -------------------------
+    // Signin / Social Verify
+    // -------------------------
+    /**
+     * This is the next step after the user signs in with their social account. This request checks the authorization code given by the social media company in order to create a session token.
+     * @param social_type The type of social OAuth2 url you are trying to verify
+     * @param authorization_code The authorization code given by the social. Please read the doc for more info.
+     * @return
+     */
+    public static SignInSocialVerifyResult SignInSocialVerify(String social_type, String authorization_code) {
+        return SignInSocialVerify(social_type, authorization_code, null);
+    }
+
+    /**
+     * Same as SignInSocialVerify, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Returns 'timeout_error' if no answer arrives in time.
+     * @param social_type The type of social OAuth2 url you are trying to verify
+     * @param authorization_code The authorization code given by the social. Please read the doc for more info.
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static SignInSocialVerifyResult SignInSocialVerify(String social_type, String authorization_code, Deadline deadline) {
+        ensureInitialized();
+        return callApi(Api.SIGNIN_SOCIAL_VERIFY, signInSocialVerifyBody(social_type, authorization_code), deadlineNanos(deadline), CodeAuth::readSignInSocialVerify, CodeAuth::signInSocialVerifyError);
+    }
+
+    /**
+     * Asynchronous version of SignInSocialVerify. No thread is blocked while the request is in flight, and cancelling the future aborts the request.
+     * @param social_type The type of social OAuth2 url you are trying to verify
+     * @param authorization_code The authorization code given by the social. Please read the doc for more info.
+     * @return
+     */
+    public static CompletableFuture<SignInSocialVerifyResult> SignInSocialVerifyAsync(String social_type, String authorization_code) {
+        return SignInSocialVerifyAsync(social_type, authorization_code, null);
+    }
+
+    /**
+     * Same as SignInSocialVerifyAsync, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Completes with 'timeout_error' if no answer arrives in time.
+     * @param social_type The type of social OAuth2 url you are trying to verify
+     * @param authorization_code The authorization code given by the social. Please read the doc for more info.
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static CompletableFuture<SignInSocialVerifyResult> SignInSocialVerifyAsync(String social_type, String authorization_code, Deadline deadline) {
+        ensureInitialized();
+        return callApiAsync(Api.SIGNIN_SOCIAL_VERIFY, signInSocialVerifyBody(social_type, authorization_code), deadlineNanos(deadline), CodeAuth::readSignInSocialVerify, CodeAuth::signInSocialVerifyError);
+    }
+
+    private static byte[] signInSocialVerifyBody(String social_type, String authorization_code) {
+        return Encoder.encode(Api.SIGNIN_SOCIAL_VERIFY, social_type, authorization_code);
+    }
+
+    private static SignInSocialVerifyResult readSignInSocialVerify(HttpResponse response) {
+        if (response.statusCode == 200) {
+            JsonFields fields = JsonHelper.read(response.body);
+            String sessionToken = fields.sessionToken;
+            String respEmail = fields.email;
+            long expiration = fields.expiration;
+            int refreshLeft = fields.refreshLeft;
+
+            if (UseCache && sessionToken != null) {
+                cacheSession(sessionToken, new SessionCacheData(respEmail, expiration, refreshLeft));
+            }
+
+            SignInSocialVerifyResult r = new SignInSocialVerifyResult();
+            r.session_token = sessionToken;
+            r.email = respEmail;
+            r.expiration = expiration;
+            r.refresh_left = refreshLeft;
+            r.error = "no_error";
+            return r;
+        } else if (response.statusCode == 400) {
+            return signInSocialVerifyError(JsonHelper.read(response.body).error);
+        } else {
+            return signInSocialVerifyError(statusError(response));
+        }
+    }
+
+    private static SignInSocialVerifyResult signInSocialVerifyError(String error) {
+        SignInSocialVerifyResult r = new SignInSocialVerifyResult();
+        r.error = error;
+        return r;
+    }
+
+    // -------------------------
+    // Session / Info
+    // -------------------------
+    /**
+     * Gets the information associated with a session token
+     * @param session_token The session token you are trying to get information on
+     * @return
+     */
+    public static SessionInfoResult SessionInfo(String session_token) {
+        return SessionInfo(session_token, null);
+    }
+
+    /**
+     * Same as SessionInfo, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Returns 'timeout_error' if no answer arrives in time, and right away when the deadline has already passed, even for a cached session.
+     * @param session_token The session token you are trying to get information on
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static SessionInfoResult SessionInfo(String session_token, Deadline deadline) {
+        return SessionInfoAsync(session_token, deadline).join();
+    }
+
+    /**
+     * Asynchronous version of SessionInfo. Completes immediately when the session is cached. Otherwise no thread is blocked while the request is in flight, and cancelling the future aborts the request.
+     * @param session_token The session token you are trying to get information on
+     * @return
+     */
+    public static CompletableFuture<SessionInfoResult> SessionInfoAsync(String session_token) {
+        return SessionInfoAsync(session_token, null);
+    }
+
+    /**
+     * Same as SessionInfoAsync, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Completes with 'timeout_error' if no answer arrives in time, and right away when the deadline has already passed, even for a cached session.
+     * @param session_token The session token you are trying to get information on
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static CompletableFuture<SessionInfoResult> SessionInfoAsync(String session_token, Deadline deadline) {
+        ensureInitialized();
+        long deadlineNanos = deadlineNanos(deadline);
+        // a caller out of time gets the same answer whether or not the token is cached
+        if (System.nanoTime() - deadlineNanos >= 0) return CompletableFuture.completedFuture(sessionInfoError("timeout_error"));
+
+        // try cache first
+        SessionInfoResult cached = sessionInfoFromCache(session_token);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        return sessionInfoCoalesced(session_token, deadlineNanos);
+    }
+
+    // -------
+    // Joins the in flight call for this token, or starts one. Every caller gets its own copy of the shared result,
+    // and cancelling one caller's future only aborts the upstream call once every caller has cancelled.
+    // Each caller's deadline only bounds its own wait. The shared call runs until the later of the leader's deadline
+    // and the default timeout, so a caller with a short deadline does not cut it short for everyone else. A caller
+    // whose deadline is later still does not take the shared call's timeout: it starts (or joins) a new call with the
+    // time it has left
+    // -------
+    private static CompletableFuture<SessionInfoResult> sessionInfoCoalesced(String session_token, long deadline) {
+        if (System.nanoTime() - deadline >= 0) return CompletableFuture.completedFuture(orStaleSessionInfo(session_token, sessionInfoError("timeout_error")));
+        while (true) {
+            SessionInfoFlight flight = sessionInfoInFlight.get(session_token);
+            if (flight != null) {
+                if (!flight.join()) {
+                    sessionInfoInFlight.remove(session_token, flight);
+                    continue;
+                }
+                Stats.sessionInfoCoalescedCalls.increment();
+                long start = System.nanoTime();
+                return sessionInfoView(session_token, flight, start, deadline);
+            }
+
+            long defaultDeadline = System.nanoTime() + RequestTimeoutNanos;
+            flight = new SessionInfoFlight(deadline - defaultDeadline > 0 ? deadline : defaultDeadline);
+            if (sessionInfoInFlight.putIfAbsent(session_token, flight) != null) continue;
+
+            Stats.sessionInfoUpstreamCalls.increment();
+            final SessionInfoFlight leader = flight;
+            leader.call = callApiAsync(Api.SESSION_INFO, sessionInfoBody(session_token), leader.deadline, response -> readSessionInfo(session_token, response), CodeAuth::sessionInfoError);
+            leader.call.whenComplete((r, ex) -> {
+                sessionInfoInFlight.remove(session_token, leader);
+                leader.result.complete(ex != null ? sessionInfoError("connection_error") : r);
+            });
+            return sessionInfoView(session_token, leader, -1, deadline);
+        }
+    }
+
+    private static CompletableFuture<SessionInfoResult> sessionInfoView(String session_token, SessionInfoFlight flight, long waitStart, long deadline) {
+        // the new call of a caller that outlived the shared one
+        AtomicReference<CompletableFuture<SessionInfoResult>> next = new AtomicReference<>();
+        CompletableFuture<SessionInfoResult> view = flight.result.thenCompose(r -> {
+            if (waitStart >= 0) {
+                long waited = System.nanoTime() - waitStart;
+                Stats.sessionInfoCoalescedWaitNanos.add(waited);
+                Stats.sessionInfoCoalescedWaitMaxNanos.accumulate(waited);
+            }
+            if (r.error.equals("timeout_error") && deadline - flight.deadline > 0 && deadline - System.nanoTime() > 0) {
+                CompletableFuture<SessionInfoResult> call = sessionInfoCoalesced(session_token, deadline);
+                next.set(call);
+                return call;
+            }
+            return CompletableFuture.completedFuture(copySessionInfo(r));
+        });
+        view.orTimeout(Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        // a caller leaves the flight when it cancels or times out
+        view.whenComplete((r, ex) -> {
+            if (ex == null) return;
+            CompletableFuture<SessionInfoResult> call = next.get();
+            if (call != null) call.cancel(true);
+            if (flight.waiters.decrementAndGet() == 0) {
+                sessionInfoInFlight.remove(session_token, flight);
+                call = flight.call;
+                if (call != null) call.cancel(true);
+            }
+        });
+        return propagateCancel(view.exceptionally(ex -> sessionInfoError(failureError(ex))).thenApply(r -> orStaleSessionInfo(session_token, r)), view);
+    }
+
+    // -------------------------
+    // Session / Info (batch)
+    // -------------------------
+    /**
+     * Gets the information associated with many session tokens at once. Cached tokens are answered immediately, duplicates are only looked up once, and the rest are fetched in parallel (at most 'batch_concurrency' at a time).
+     * @param session_tokens The session tokens you are trying to get information on
+     * @return The result of every distinct token, in the order they first appeared
+     */
+    public static Map<String, SessionInfoResult> SessionInfoBatch(Collection<String> session_tokens) {
+        return SessionInfoBatchAsync(session_tokens, null).join();
+    }
+
+    /**
+     * Same as SessionInfoBatch, but every lookup is bounded by the deadline. Tokens that could not be looked up in time get 'timeout_error', and every token does when the deadline has already passed, even cached ones.
+     * @param session_tokens The session tokens you are trying to get information on
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return The result of every distinct token, in the order they first appeared
+     */
+    public static Map<String, SessionInfoResult> SessionInfoBatch(Collection<String> session_tokens, Deadline deadline) {
+        return SessionInfoBatchAsync(session_tokens, deadline).join();
+    }
+
+    /**
+     * Asynchronous version of SessionInfoBatch. Cancelling the future aborts every lookup still in flight.
+     * @param session_tokens The session tokens you are trying to get information on
+     * @return The result of every distinct token, in the order they first appeared
+     */
+    public static CompletableFuture<Map<String, SessionInfoResult>> SessionInfoBatchAsync(Collection<String> session_tokens) {
+        return SessionInfoBatchAsync(session_tokens, null);
+    }
+
+    /**
+     * Same as SessionInfoBatchAsync, but every lookup is bounded by the deadline. Tokens that could not be looked up in time get 'timeout_error', and every token does when the deadline has already passed, even cached ones.
+     * @param session_tokens The session tokens you are trying to get information on
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return The result of every distinct token, in the order they first appeared
+     */
+    public static CompletableFuture<Map<String, SessionInfoResult>> SessionInfoBatchAsync(Collection<String> session_tokens, Deadline deadline) {
+        ensureInitialized();
+        long deadlineNanos = deadlineNanos(deadline);
+
+        // one pass over the cache, de-duplicating the misses
+        LinkedHashMap<String, SessionInfoResult> results = new LinkedHashMap<>();
+        LinkedHashSet<String> misses = new LinkedHashSet<>();
+        boolean expired = System.nanoTime() - deadlineNanos >= 0;
+        for (String token : session_tokens) {
+            if (token == null || results.containsKey(token) || misses.contains(token)) continue;
+            // same as SessionInfoAsync: out of time, cached or not
+            SessionInfoResult cached = expired ? sessionInfoError("timeout_error") : sessionInfoFromCache(token);
+            if (cached != null) results.put(token, cached);
+            else {
+                misses.add(token);
+                results.put(token, null); // keeps the input order
+            }
+        }
+        if (misses.isEmpty()) return CompletableFuture.completedFuture(results);
+
+        return new SessionInfoBatch(results, misses, deadlineNanos).start();
+    }
+
+    private static final class SessionInfoBatch {
+        final LinkedHashMap<String, SessionInfoResult> order;
+        final ConcurrentHashMap<String, SessionInfoResult> fetched = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<String> pending;
+        final Set<CompletableFuture<SessionInfoResult>> inFlight = ConcurrentHashMap.newKeySet();
+        final AtomicInteger remaining;
+        final CompletableFuture<Map<String, SessionInfoResult>> result = new CompletableFuture<>();
+        final long deadline;
+
+        SessionInfoBatch(LinkedHashMap<String, SessionInfoResult> order, Collection<String> misses, long deadline) {
+            this.order = order;
+            this.deadline = deadline;
+            this.pending = new ConcurrentLinkedQueue<>(misses);
+            this.remaining = new AtomicInteger(misses.size());
+        }
+
+        CompletableFuture<Map<String, SessionInfoResult>> start() {
+            result.whenComplete((r, ex) -> {
+                if (result.isCancelled()) {
+                    pending.clear();
+                    for (CompletableFuture<SessionInfoResult> call : inFlight) call.cancel(true);
+                }
+            });
+            int workers = Math.min(BatchConcurrency, pending.size());
+            for (int i = 0; i < workers; i++) next();
+            return result;
+        }
+
+        // each worker keeps one lookup in flight. lookups that complete immediately are handled in the loop instead of recursively
+        void next() {
+            String token;
+            while (!result.isDone() && (token = pending.poll()) != null) {
+                final String t = token;
+                CompletableFuture<SessionInfoResult> call = sessionInfoCoalesced(t, deadline);
+                if (!call.isDone()) {
+                    inFlight.add(call);
+                    call.whenComplete((r, ex) -> {
+                        inFlight.remove(call);
+                        finish(t, ex != null ? sessionInfoError("connection_error") : r);
+                        next();
+                    });
+                    return;
+                }
+                finish(t, call.isCompletedExceptionally() ? sessionInfoError("connection_error") : call.join());
+            }
+        }
+
+        void finish(String token, SessionInfoResult r) {
+            fetched.put(token, r);
+            if (remaining.decrementAndGet() == 0) {
+                for (Map.Entry<String, SessionInfoResult> e : order.entrySet()) {
+                    if (e.getValue() == null) e.setValue(fetched.get(e.getKey()));
+                }
+                result.complete(order);
+            }
+        }
+    }
+
+    private static SessionInfoResult copySessionInfo(SessionInfoResult source) {
+        SessionInfoResult r = new SessionInfoResult();
+        r.email = source.email;
+        r.expiration = source.expiration;
+        r.refresh_left = source.refresh_left;
+        r.error = source.error;
+        r.stale = source.stale;
+        return r;
+    }
+
+    private static void cacheSession(String session_token, SessionCacheData cached) {
+        // a session that expires (by the server's clock) before it could be served is not worth keeping
+        if (!cached.isFresh(System.nanoTime())) {
+            sessionCache.remove(session_token);
+            return;
+        }
+        sessionCache.put(session_token, cached);
+    }
+
+    private static SessionInfoResult sessionInfoFromCache(String session_token) {
+        if (!UseCache) return null;
+        SessionCacheData cached = sessionCache.get(session_token);
+        if (cached == null || !cached.isFresh(System.nanoTime())) return null;
+        return sessionInfoFromCacheData(cached, false);
+    }
+
+    // -------
+    // When the api could not answer, fall back to a stale cache entry if there is one that can still be served
+    // -------
+    private static SessionInfoResult orStaleSessionInfo(String session_token, SessionInfoResult result) {
+        if (!UseCache || CacheMaxStaleNanos == 0) return result;
+        if (!result.error.equals("connection_error") && !result.error.equals("timeout_error") && !result.error.equals("circuit_open")) return result;
+
+        SessionCacheData cached = sessionCache.get(session_token);
+        if (cached == null || !cached.isServableStale(System.nanoTime())) return result;
+        Stats.sessionInfoStaleServed.increment();
+        return sessionInfoFromCacheData(cached, true);
+    }
+
+    private static SessionInfoResult sessionInfoFromCacheData(SessionCacheData cached, boolean stale) {
+        SessionInfoResult r = new SessionInfoResult();
+        r.email = cached.email;
+        r.expiration = cached.expiration;
+        r.refresh_left = cached.refreshLeft;
+        r.error = "no_error";
+        r.stale = stale;
+        return r;
+    }
+
+    // -------
+    // 'expiration' is a unix timestamp in seconds, as the api documents it
+    // -------
+    private static long expirationMillis(long expiration) {
+        return TimeUnit.SECONDS.toMillis(expiration);
+    }
+
+    private static byte[] sessionInfoBody(String session_token) {
+        return Encoder.encode(Api.SESSION_INFO, session_token, null);
+    }
+
+    private static SessionInfoResult readSessionInfo(String session_token, HttpResponse response) {
+        if (response.statusCode == 200) {
+            JsonFields fields = JsonHelper.read(response.body);
+            String respEmail = fields.email;
+            long expiration = fields.expiration;
+            int refreshLeft = fields.refreshLeft;
+
+            if (UseCache) {
+                cacheSession(session_token, new SessionCacheData(respEmail, expiration, refreshLeft));
+            }
+
+            SessionInfoResult r = new SessionInfoResult();
+            r.email = respEmail;
+            r.expiration = expiration;
+            r.refresh_left = refreshLeft;
+            r.error = "no_error";
+            return r;
+        } else if (response.statusCode == 400) {
+            String error = JsonHelper.read(response.body).error;
+            // the server rejected the token: a cached copy must not be served stale for it later. other errors
+            // (internal_error, rate_limit_reached, ...) say nothing about the token and keep it
+            if (UseCache && "bad_session_token".equals(error)) sessionCache.remove(session_token);
+            return sessionInfoError(error);
+        } else {
+            return sessionInfoError(statusError(response));
+        }
+    }
+
+    private static SessionInfoResult sessionInfoError(String error) {
+        SessionInfoResult r = new SessionInfoResult();
+        r.error = error;
+        return r;
+    }
+
+    // -------------------------
+    // Session / Refresh
+    // -------------------------
+    /**
+     * Create a new session token using existing session token
+     * @param session_token The session token you are trying to use to create a new token
+     * @return
+     */
+    public static SessionRefreshResult SessionRefresh(String session_token) {
+        return SessionRefresh(session_token, null);
+    }
+
+    /**
+     * Same as SessionRefresh, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Returns 'timeout_error' if no answer arrives in time.
+     * @param session_token The session token you are trying to use to create a new token
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static SessionRefreshResult SessionRefresh(String session_token, Deadline deadline) {
+        ensureInitialized();
+        return callApi(Api.SESSION_REFRESH, sessionRefreshBody(session_token), deadlineNanos(deadline), response -> readSessionRefresh(session_token, response), CodeAuth::sessionRefreshError);
+    }
+
+    /**
+     * Asynchronous version of SessionRefresh. No thread is blocked while the request is in flight, and cancelling the future aborts the request.
+     * @param session_token The session token you are trying to use to create a new token
+     * @return
+     */
+    public static CompletableFuture<SessionRefreshResult> SessionRefreshAsync(String session_token) {
+        return SessionRefreshAsync(session_token, null);
+    }
+
+    /**
+     * Same as SessionRefreshAsync, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Completes with 'timeout_error' if no answer arrives in time.
+     * @param session_token The session token you are trying to use to create a new token
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static CompletableFuture<SessionRefreshResult> SessionRefreshAsync(String session_token, Deadline deadline) {
+        ensureInitialized();
+        return callApiAsync(Api.SESSION_REFRESH, sessionRefreshBody(session_token), deadlineNanos(deadline), response -> readSessionRefresh(session_token, response), CodeAuth::sessionRefreshError);
+    }
+
+    private static byte[] sessionRefreshBody(String session_token) {
+        return Encoder.encode(Api.SESSION_REFRESH, session_token, null);
+    }
+
+    private static SessionRefreshResult readSessionRefresh(String session_token, HttpResponse response) {
+        if (response.statusCode == 200) {
+            JsonFields fields = JsonHelper.read(response.body);
+            String newToken = fields.sessionToken;
+            String respEmail = fields.email;
+            long expiration = fields.expiration;
+            int refreshLeft = fields.refreshLeft;
+
+            if (UseCache) {
+                sessionCache.remove(session_token);
+                if (newToken != null) {
+                    cacheSession(newToken, new SessionCacheData(respEmail, expiration, refreshLeft));
+                }
+            }
+
+            SessionRefreshResult r = new SessionRefreshResult();
+            r.session_token = newToken;
+            r.email = respEmail;
+            r.expiration = expiration;
+            r.refresh_left = refreshLeft;
+            r.error = "no_error";
+            return r;
+        } else if (response.statusCode == 400) {
+            String error = JsonHelper.read(response.body).error;
+            if (UseCache && "bad_session_token".equals(error)) sessionCache.remove(session_token);
+            return sessionRefreshError(error);
+        } else {
+            return sessionRefreshError(statusError(response));
+        }
+    }
+
+    private static SessionRefreshResult sessionRefreshError(String error) {
+        SessionRefreshResult r = new SessionRefreshResult();
+        r.error = error;
+        return r;
+    }
+
+    // -------------------------
+    // Session / Invalidate
+    // -------------------------
+    /**
+     * Invalidate a session token. By doing so, the session token can no longer be used for any api call.
+     * @param session_token The session token you are trying to use to invalidate
+     * @param invalidate_type How to use the session token to invalidate. Possible invalidate types: "only_this", "all", "all_but_this"
+     * @return
+     */
+    public static SessionInvalidateResult SessionInvalidate(String session_token, String invalidate_type) {
+        return SessionInvalidate(session_token, invalidate_type, null);
+    }
+
+    /**
+     * Same as SessionInvalidate, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Returns 'timeout_error' if no answer arrives in time.
+     * @param session_token The session token you are trying to use to invalidate
+     * @param invalidate_type How to use the session token to invalidate. Possible invalidate types: "only_this", "all", "all_but_this"
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static SessionInvalidateResult SessionInvalidate(String session_token, String invalidate_type, Deadline deadline) {
+        ensureInitialized();
+        return callApi(Api.SESSION_INVALIDATE, sessionInvalidateBody(session_token, invalidate_type), deadlineNanos(deadline), response -> readSessionInvalidate(session_token, response), CodeAuth::sessionInvalidateError);
+    }
+
+    /**
+     * Asynchronous version of SessionInvalidate. No thread is blocked while the request is in flight, and cancelling the future aborts the request.
+     * @param session_token The session token you are trying to use to invalidate
+     * @param invalidate_type How to use the session token to invalidate. Possible invalidate types: "only_this", "all", "all_but_this"
+     * @return
+     */
+    public static CompletableFuture<SessionInvalidateResult> SessionInvalidateAsync(String session_token, String invalidate_type) {
+        return SessionInvalidateAsync(session_token, invalidate_type, null);
+    }
+
+    /**
+     * Same as SessionInvalidateAsync, but bounded by a deadline that covers the whole call (dns, connect, tls, write and read). Completes with 'timeout_error' if no answer arrives in time.
+     * @param session_token The session token you are trying to use to invalidate
+     * @param invalidate_type How to use the session token to invalidate. Possible invalidate types: "only_this", "all", "all_but_this"
+     * @param deadline When to give up. null uses 'request_timeout_ms'.
+     * @return
+     */
+    public static CompletableFuture<SessionInvalidateResult> SessionInvalidateAsync(String session_token, String invalidate_type, Deadline deadline) {
+        ensureInitialized();
+        return callApiAsync(Api.SESSION_INVALIDATE, sessionInvalidateBody(session_token, invalidate_type), deadlineNanos(deadline), response -> readSessionInvalidate(session_token, response), CodeAuth::sessionInvalidateError);
+    }
+
+    private static byte[] sessionInvalidateBody(String session_token, String invalidate_type) {
+        return Encoder.encode(Api.SESSION_INVALIDATE, session_token, invalidate_type);
+    }
+
+    private static SessionInvalidateResult readSessionInvalidate(String session_token, HttpResponse response) {
+        if (response.statusCode == 200) {
+            if (UseCache) sessionCache.remove(session_token);
+            return sessionInvalidateError("no_error");
+        } else if (response.statusCode == 400) {
+            String error = JsonHelper.read(response.body).error;
+            if (UseCache && "bad_session_token".equals(error)) sessionCache.remove(session_token);
+            return sessionInvalidateError(error);
+        } else {
+            return sessionInvalidateError(statusError(response));
+        }
+    }
+
+    private static SessionInvalidateResult sessionInvalidateError(String error) {
+        SessionInvalidateResult r = new SessionInvalidateResult();
+        r.error = error;
+        return r;
+    }
+
+    // -------------------------
+    // Readiness
+    // -------------------------
+    /**
+     * Waits for the connections opened by InitializeOptions.prewarm_connections. Health checks can wait on it so an
+     * instance only gets traffic once its first calls will not pay for dns, tcp and tls setup.
+     * @return A future that completes with true once the connections are open, or false when the endpoint could not be reached (calls then open their connections themselves). Completes with true right away when pre-warming is disabled
+     */
+    public static CompletableFuture<Boolean> WhenReady() {
+        ensureInitialized();
+        return WarmUpDone.copy();
+    }
+
+    /**
+     * Whether the pre-warmed connections are open: the last warm up (at Initialize, then every keep_warm_interval_ms)
+     * reached the endpoint. Always true when pre-warming is disabled
+     * @return
+     */
+    public static boolean IsReady() {
+        ensureInitialized();
+        return WarmUpDone.isDone() && Warm;
+    }
+
+    // -------------------------
+    // Circuit breaker
+    // -------------------------
+    /**
+     * Gets the current state of the circuit breaker. With several endpoints, the state of the healthiest one
+     * @return
+     */
+    public static CircuitState GetCircuitState() {
+        ensureInitialized();
+        return healthiestCircuitState();
+    }
+
+    /**
+     * Gets the current state of the circuit breaker of one endpoint
+     * @param endpoint The endpoint, as given to Initialize or in InitializeOptions.extra_endpoints
+     * @return The state, or null when the endpoint is unknown
+     */
+    public static CircuitState GetCircuitState(String endpoint) {
+        ensureInitialized();
+        for (Route route : Routes) {
+            if (route.endpoint.equals(endpoint)) return route.breaker.state();
+        }
+        return null;
+    }
+
+    private static CircuitState healthiestCircuitState() {
+        CircuitState best = CircuitState.OPEN;
+        for (Route route : Routes) {
+            CircuitState state = route.breaker.state();
+            if (state == CircuitState.CLOSED) return state;
+            if (state == CircuitState.HALF_OPEN) best = state;
+        }
+        return best;
+    }
+
+    /**
+     * Registers a listener that is notified every time the circuit breaker changes state
+     * @param listener The listener to notify
+     */
+    public static void AddCircuitBreakerListener(CircuitBreakerListener listener) {
+        if (listener != null) circuitBreakerListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with AddCircuitBreakerListener
+     * @param listener The listener to remove
+     */
+    public static void RemoveCircuitBreakerListener(CircuitBreakerListener listener) {
+        circuitBreakerListeners.remove(listener);
+    }
+
+    // -------------------------
+    // Metrics
+    // -------------------------
+    /**
+     * Gets a snapshot of the SDK's internal counters
+     * @return
+     */
+    public static Metrics GetMetrics() {
+        Metrics m = new Metrics();
+        m.session_info_upstream_calls = Stats.sessionInfoUpstreamCalls.sum();
+        m.session_info_coalesced_calls = Stats.sessionInfoCoalescedCalls.sum();
+        long misses = m.session_info_upstream_calls + m.session_info_coalesced_calls;
+        m.session_info_coalescing_ratio = misses == 0 ? 0 : (double) m.session_info_coalesced_calls / misses;
+        m.session_info_coalesced_wait_avg_ms = m.session_info_coalesced_calls == 0 ? 0 : Stats.sessionInfoCoalescedWaitNanos.sum() / 1e6 / m.session_info_coalesced_calls;
+        m.session_info_coalesced_wait_max_ms = Stats.sessionInfoCoalescedWaitMaxNanos.get() / 1e6;
+        m.hedged_requests = Stats.hedgedRequests.sum();
+        m.hedged_requests_won = Stats.hedgedRequestsWon.sum();
+        m.retries = Stats.retries.sum();
+        m.retries_denied_by_budget = Stats.retriesDeniedByBudget.sum();
+        m.circuit_state = Routes != null ? healthiestCircuitState() : CircuitState.CLOSED;
+        m.circuit_rejected_calls = Stats.circuitRejectedCalls.sum();
+        m.endpoint_failovers = Stats.endpointFailovers.sum();
+        m.server_clock_offset_ms = ServerClock.offsetMillis();
+        m.session_info_stale_served = Stats.sessionInfoStaleServed.sum();
+        if (sessionCache != null) {
+            m.session_cache_entries = sessionCache.entries();
+            m.session_cache_bytes = sessionCache.bytes();
+        }
+        m.session_cache_evictions = Stats.sessionCacheEvictions.sum();
+        m.rate_limited_calls = Stats.rateLimitedCalls.sum();
+        m.rate_limit_queued_calls = Stats.rateLimitQueuedCalls.sum();
+        if (Concurrency != null) {
+            m.concurrency_limit = Concurrency.limit();
+        }
+        // counted by the routes, which the disabled limiters leave alone
+        if (Routes != null) {
+            for (Route route : Routes) m.concurrency_in_flight += route.inFlight.get();
+        }
+        m.concurrency_rejected_calls = Stats.concurrencyRejectedCalls.sum();
+        m.concurrency_queued_calls = Stats.concurrencyQueuedCalls.sum();
+        m.session_shed_calls = Stats.shedCalls[Group.SESSION.ordinal()].sum();
+        m.signin_shed_calls = Stats.shedCalls[Group.SIGNIN.ordinal()].sum();
+        m.invalidate_shed_calls = Stats.shedCalls[Group.INVALIDATE.ordinal()].sum();
+        return m;
+    }
+
+    // -------------------------
+    // Request bodies, written straight to utf-8 bytes. The bytes that only depend on the api and the project,
+    // '{"project_id":"<project id>","<first field>":"' and '","<second field>":"', are built once at Initialize.
+    // The exactly sized array handed to the transport is the only allocation
+    // -------------------------
+    private static final class RequestEncoder {
+        private static final byte[] END = { '"', '}' };
+        private final byte[][] prefixes = new byte[Api.values().length][];
+        private final byte[][] separators = new byte[Api.values().length][];
+
+        RequestEncoder(String projectId) {
+            for (Api api : Api.values()) {
+                prefixes[api.ordinal()] = ("{\"project_id\":\"" + escapeJson(projectId) + "\",\"" + api.firstField + "\":\"").getBytes(StandardCharsets.UTF_8);
+                if (api.secondField != null) separators[api.ordinal()] = ("\",\"" + api.secondField + "\":\"").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        // 'second' is ignored by apis with a single field
+        byte[] encode(Api api, String first, String second) {
+            byte[] prefix = prefixes[api.ordinal()];
+            byte[] separator = separators[api.ordinal()];
+            if (first == null) first = "";
+            if (second == null || separator == null) second = "";
+
+            // fast path: plain ascii values, one byte per char, written in a single pass
+            byte[] body = new byte[prefix.length + first.length() + (separator != null ? separator.length : 0) + second.length() + END.length];
+            System.arraycopy(prefix, 0, body, 0, prefix.length);
+            int pos = writePlain(first, body, prefix.length);
+            if (pos >= 0 && separator != null) {
+                System.arraycopy(separator, 0, body, pos, separator.length);
+                pos = writePlain(second, body, pos + separator.length);
+            }
+            if (pos >= 0) {
+                System.arraycopy(END, 0, body, pos, END.length);
+                return body;
+            }
+
+            // something to escape or encode: measure, then write
+            body = new byte[prefix.length + encodedLength(first) + (separator != null ? separator.length : 0) + encodedLength(second) + END.length];
+            System.arraycopy(prefix, 0, body, 0, prefix.length);
+            pos = write(first, body, prefix.length);
+            if (separator != null) {
+                System.arraycopy(separator, 0, body, pos, separator.length);
+                pos = write(second, body, pos + separator.length);
+            }
+            System.arraycopy(END, 0, body, pos, END.length);
+            return body;
+        }
+
+        // writes 's' at 'pos' when it is plain ascii and returns the position after it, or returns -1
+        private static int writePlain(String s, byte[] out, int pos) {
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c < 0x20 || c >= 0x80 || c == '"' || c == '\\') return -1;
+                out[pos + i] = (byte) c;
+            }
+            return pos + length;
+        }
+
+        // number of bytes 's' takes once escaped and utf-8 encoded
+        private static int encodedLength(String s) {
+            int length = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    if (!needsEscape(c)) length += 1;
+                    else if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f') length += 2;
+                    else length += 6;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired, written as '?' like String.getBytes does
+                    length += 1;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        // writes 's' escaped and utf-8 encoded at 'pos', returns the position after it
+        private static int write(String s, byte[] out, int pos) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    if (!needsEscape(c)) {
+                        out[pos++] = (byte) c;
+                        continue;
+                    }
+                    out[pos++] = '\\';
+                    switch (c) {
+                        case '"', '\\' -> out[pos++] = (byte) c;
+                        case '\n' -> out[pos++] = 'n';
+                        case '\r' -> out[pos++] = 'r';
+                        case '\t' -> out[pos++] = 't';
+                        case '\b' -> out[pos++] = 'b';
+                        case '\f' -> out[pos++] = 'f';
+                        default -> {
+                            out[pos++] = 'u';
+                            out[pos++] = '0';
+                            out[pos++] = '0';
+                            out[pos++] = (byte) HEX[c >> 4];
+                            out[pos++] = (byte) HEX[c & 0xF];
+                        }
+                    }
+                } else if (c < 0x800) {
+                    out[pos++] = (byte) (0xC0 | c >> 6);
+                    out[pos++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    out[pos++] = (byte) (0xF0 | cp >> 18);
+                    out[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    out[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    out[pos++] = (byte) (0x80 | cp & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    out[pos++] = '?';
+                } else {
+                    out[pos++] = (byte) (0xE0 | c >> 12);
+                    out[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    out[pos++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            return pos;
+        }
+    }
+
+    // -------------------------
+    // JSON reading: a single pass over the top-level object of a body fills every field the api uses
+    // -------------------------
+    private static final class JsonFields {
+        String error;
+        String sessionToken;
+        String email;
+        String signinUrl;
+        long expiration;
+        int refreshLeft;
+    }
+
+    private static final class JsonHelper {
+        private static final String[] KEYS = { "error", "session_token", "email", "signin_url", "expiration", "refresh_left" };
+        private static final byte[][] KEY_BYTES = new byte[KEYS.length][];
+        // indexes in KEYS of the keys of every length, so a key is only compared with the few of its length
+        private static final int[][] KEYS_BY_LENGTH;
+        private static final int EXPIRATION = 4;
+        private static final int REFRESH_LEFT = 5;
+
+        static {
+            int longest = 0;
+            for (int i = 0; i < KEYS.length; i++) {
+                KEY_BYTES[i] = KEYS[i].getBytes(StandardCharsets.US_ASCII);
+                longest = Math.max(longest, KEY_BYTES[i].length);
+            }
+            KEYS_BY_LENGTH = new int[longest + 1][0];
+            for (int i = 0; i < KEYS.length; i++) {
+                int[] same = KEYS_BY_LENGTH[KEY_BYTES[i].length];
+                same = Arrays.copyOf(same, same.length + 1);
+                same[same.length - 1] = i;
+                KEYS_BY_LENGTH[KEY_BYTES[i].length] = same;
+            }
+        }
+
+        private final byte[] json;
+        private int pos;
+
+        private JsonHelper(byte[] json) {
+            this.json = json;
+        }
+
+        // Reads the top-level fields of 'json'. Unknown fields and nested values are skipped, and reading stops at the
+        // first syntax error, keeping what was read before it. Missing fields are null or 0
+        static JsonFields read(byte[] json) {
+            JsonFields fields = new JsonFields();
+            if (json != null) new JsonHelper(json).readObject(fields);
+            return fields;
+        }
+
+        private void readObject(JsonFields fields) {
+            skipWhitespace();
+            if (!consume('{')) return;
+            skipWhitespace();
+            if (consume('}')) return;
+            while (true) {
+                skipWhitespace();
+                if (pos >= json.length || json[pos] != '"') return;
+                int key = readKey();
+                if (key == -2) return;
+                skipWhitespace();
+                if (!consume(':')) return;
+                skipWhitespace();
+                if (!readValue(fields, key)) return;
+                skipWhitespace();
+                if (!consume(',')) return;
+            }
+        }
+
+        // index of the key in KEYS, -1 for keys the api does not use, -2 when malformed
+        private int readKey() {
+            int start = pos + 1;
+            int end = stringEnd(json, start);
+            while (end < json.length && json[end] < 0) end = stringEnd(json, end + 1);
+            if (end >= json.length) return -2;
+            if (json[end] == '"') {
+                pos = end + 1;
+                if (end - start >= KEYS_BY_LENGTH.length) return -1;
+                candidates:
+                for (int i : KEYS_BY_LENGTH[end - start]) {
+                    byte[] candidate = KEY_BYTES[i];
+                    for (int k = 0; k < candidate.length; k++) {
+                        if (json[start + k] != candidate[k]) continue candidates;
+                    }
+                    return i;
+                }
+                return -1;
+            }
+            // an escaped key, rare enough to decode
+            String key = readString();
+            if (key == null) return -2;
+            for (int i = 0; i < KEYS.length; i++) {
+                if (KEYS[i].equals(key)) return i;
+            }
+            return -1;
+        }
+
+        private boolean readValue(JsonFields fields, int key) {
+            if (pos >= json.length) return false;
+            byte b = json[pos];
+            if (b == '"') {
+                // the value of an unknown key is only skipped, never decoded
+                if (key < 0) return skipString();
+                String value = readString();
+                if (value == null) return false;
+                set(fields, key, value);
+                return true;
+            }
+            if (b == '-' || (b >= '0' && b <= '9')) {
+                long value = readLong();
+                if (key == EXPIRATION) fields.expiration = value;
+                else if (key == REFRESH_LEFT) fields.refreshLeft = value == (int) value ? (int) value : 0;
+                return true;
+            }
+            if (b == '{' || b == '[') return skipNested();
+            // true, false, null
+            int start = pos;
+            while (pos < json.length && json[pos] >= 'a' && json[pos] <= 'z') pos++;
+            return pos > start;
+        }
+
+        private static void set(JsonFields fields, int key, String value) {
+            switch (key) {
+                case 0 -> fields.error = value;
+                case 1 -> fields.sessionToken = value;
+                case 2 -> fields.email = value;
+                case 3 -> fields.signinUrl = value;
+                case EXPIRATION -> fields.expiration = parseLong(value);
+                case REFRESH_LEFT -> {
+                    long refreshLeft = parseLong(value);
+                    fields.refreshLeft = refreshLeft == (int) refreshLeft ? (int) refreshLeft : 0;
+                }
+                default -> {
+                }
+            }
+        }
+
+        // a number sent as a string
+        private static long parseLong(String value) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        }
+
+        // an integer, or 0 when the number has a fraction, an exponent or does not fit in a long
+        private long readLong() {
+            boolean negative = consume('-');
+            long value = 0;
+            boolean valid = pos < json.length && json[pos] >= '0' && json[pos] <= '9';
+            while (pos < json.length && json[pos] >= '0' && json[pos] <= '9') {
+                int digit = json[pos++] - '0';
+                if (value > (Long.MAX_VALUE - digit) / 10) valid = false;
+                value = value * 10 + digit;
+            }
+            while (pos < json.length && (json[pos] == '.' || json[pos] == 'e' || json[pos] == 'E' || json[pos] == '+' || json[pos] == '-' || (json[pos] >= '0' && json[pos] <= '9'))) {
+                valid = false;
+                pos++;
+            }
+            if (!valid) return 0L;
+            return negative ? -value : value;
+        }
+
+        // reads the string starting at 'pos' (its opening quote), null when malformed
+        private String readString() {
+            int start = ++pos;
+            boolean ascii = true;
+            pos = stringEnd(json, pos);
+            while (pos < json.length && json[pos] < 0) {
+                ascii = false;
+                pos = stringEnd(json, pos + 1);
+            }
+            if (pos >= json.length) return null;
+            if (json[pos] == '"') {
+                // no escapes, the common case
+                return new String(json, start, pos++ - start, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+            }
+
+            StringBuilder value = new StringBuilder(pos - start + 16);
+            int run = start;
+            while (pos < json.length) {
+                byte b = json[pos];
+                if (b == '"') {
+                    value.append(new String(json, run, pos++ - run, StandardCharsets.UTF_8));
+                    return value.toString();
+                }
+                if (b != '\\') {
+                    pos = stringEnd(json, pos + 1);
+                    continue;
+                }
+                if (pos > run) value.append(new String(json, run, pos - run, StandardCharsets.UTF_8));
+                if (pos + 1 >= json.length) return null;
+                byte escaped = json[pos + 1];
+                pos += 2;
+                switch (escaped) {
+                    case '"', '\\', '/' -> value.append((char) escaped);
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'u' -> {
+                        // surrogate pairs come as two escapes, appended one after the other
+                        if (pos + 4 > json.length) return null;
+                        int c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(json[pos + i], 16);
+                            if (digit < 0) return null;
+                            c = c << 4 | digit;
+                        }
+                        value.append((char) c);
+                        pos += 4;
+                    }
+                    default -> {
+                        return null;
+                    }
+                }
+                run = pos;
+            }
+            return null;
+        }
+
+        // skips an object or an array, strings included
+        private boolean skipNested() {
+            int depth = 0;
+            while ((pos = structural(json, pos)) < json.length) {
+                byte b = json[pos];
+                if (b == '"') {
+                    if (!skipString()) return false;
+                    continue;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        pos++;
+                        return true;
+                    }
+                }
+                pos++;
+            }
+            return false;
+        }
+
+        // skips the string starting at 'pos' (its opening quote) without decoding it, false when it is not closed
+        private boolean skipString() {
+            pos = stringEnd(json, pos + 1);
+            while (pos < json.length && json[pos] != '"') pos = stringEnd(json, pos + (json[pos] == '\\' ? 2 : 1));
+            if (pos >= json.length) return false;
+            pos++;
+            return true;
+        }
+
+        // index of the first '"', '\\' or non ascii byte at or after 'from', or the length
+        private static int stringEnd(byte[] json, int from) {
+            ByteScanner scanner = Scanner;
+            if (scanner != null) return scanner.stringEnd(json, from);
+            int i = from;
+            while (i < json.length && json[i] != '"' && json[i] != '\\' && json[i] >= 0) i++;
+            return i;
+        }
+
+        // index of the first '"', '{', '}', '[' or ']' at or after 'from', or the length
+        private static int structural(byte[] json, int from) {
+            ByteScanner scanner = Scanner;
+            if (scanner != null) return scanner.structural(json, from);
+            int i = from;
+            while (i < json.length && json[i] != '"' && (json[i] | 0x20) != '{' && (json[i] | 0x20) != '}') i++;
+            return i;
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length && (json[pos] == ' ' || json[pos] == '\t' || json[pos] == '\n' || json[pos] == '\r')) pos++;
+        }
+
+        private boolean consume(char c) {
+            if (pos >= json.length || json[pos] != c) return false;
+            pos++;
+            return true;
+        }
+    }
+
+    // -------------------------
+    // Vectorized json scanning. The implementation, VectorScanner, is compiled on its own with the incubating
+    // jdk.incubator.vector module and only loaded (by name) when simd_json is set, so neither the SDK nor its build
+    // depend on the module otherwise
+    // -------------------------
+    interface ByteScanner {
+        // index of the first '"', '\\' or non ascii byte at or after 'from', or the length
+        int stringEnd(byte[] json, int from);
+
+        // index of the first '"', '{', '}', '[' or ']' at or after 'from', or the length
+        int structural(byte[] json, int from);
+    }
+
+    // the vector scanner, or null (byte by byte scanning) when the jvm runs without the module
+    private static ByteScanner loadVectorScanner() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            return (ByteScanner) Class.forName("CodeAuthSDK.VectorScanner").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // escape JSON string, in one pass. returns 's' itself when there is nothing to escape
+    private static String escapeJson(String s) {
+        if (s == null) return "";
+        int i = 0;
+        while (i < s.length() && !needsEscape(s.charAt(i))) i++;
+        if (i == s.length()) return s;
+        StringBuilder escaped = new StringBuilder(s.length() + 16).append(s, 0, i);
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!needsEscape(c)) {
+                escaped.append(c);
+                continue;
+            }
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                case '\b' -> escaped.append("\\b");
+                case '\f' -> escaped.append("\\f");
+                default -> escaped.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static boolean needsEscape(char c) {
+        return c < 0x20 || c == '"' || c == '\\';
+    }
+
+
+    // -------------------------
+    // End
+    // -------------------------
+}
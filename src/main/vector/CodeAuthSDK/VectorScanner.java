@@ -0,0 +1,40 @@
+package CodeAuthSDK;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// -------------------------
+// Vectorized json scanning: compares a whole vector of bytes (16 to 64 depending on the cpu) per step. Loaded by
+// CodeAuth only when simd_json is set and the jvm runs with '--add-modules jdk.incubator.vector'
+// -------------------------
+final class VectorScanner implements CodeAuth.ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public int stringEnd(byte[] json, int from) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(json.length - from); i < bound; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, json, i);
+            // non ascii bytes are negative
+            VectorMask<Byte> found = v.eq((byte) '"').or(v.eq((byte) '\\')).or(v.lt((byte) 0));
+            if (found.anyTrue()) return i + found.firstTrue();
+        }
+        while (i < json.length && json[i] != '"' && json[i] != '\\' && json[i] >= 0) i++;
+        return i;
+    }
+
+    @Override
+    public int structural(byte[] json, int from) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(json.length - from); i < bound; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, json, i);
+            // '[' and ']' are '{' and '}' without the 0x20 bit
+            ByteVector folded = v.or((byte) 0x20);
+            VectorMask<Byte> found = v.eq((byte) '"').or(folded.eq((byte) '{')).or(folded.eq((byte) '}'));
+            if (found.anyTrue()) return i + found.firstTrue();
+        }
+        while (i < json.length && json[i] != '"' && (json[i] | 0x20) != '{' && (json[i] | 0x20) != '}') i++;
+        return i;
+    }
+}
@@ -0,0 +1,100 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The *Async apis: a cache hit completes before returning, and cancelling a returned future aborts its exchange and
+ * gives its concurrency slot to the next call
+ */
+class AsyncApiTest {
+    private final HeldTransport transport = new HeldTransport(true);
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    private void start(boolean useCache, int poolSize) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        options.circuit_breaker = false;
+        options.pool_size = poolSize;
+        options.concurrency_queue_timeout_ms = 5000;
+        CodeAuth.Initialize("https://example.com", "project", useCache, 30, options);
+    }
+
+    // cancellation reaches the transport through the futures chained to it, maybe on another thread
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) Thread.sleep(5);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void completesACacheHitBeforeReturning() {
+        start(true, 0);
+        CompletableFuture<CodeAuth.SessionInfoResult> miss = CodeAuth.SessionInfoAsync("token");
+        assertFalse(miss.isDone());
+        transport.answer(0);
+        assertEquals("no_error", miss.join().error);
+
+        CompletableFuture<CodeAuth.SessionInfoResult> hit = CodeAuth.SessionInfoAsync("token");
+        assertTrue(hit.isDone());
+        assertEquals("a@b.c", hit.join().email);
+        assertEquals(1, transport.attempts.get());
+    }
+
+    @Test
+    void cancellingAbortsTheExchange() throws Exception {
+        start(false, 0);
+        CompletableFuture<CodeAuth.SessionInfoResult> info = CodeAuth.SessionInfoAsync("token");
+        CompletableFuture<CodeAuth.SignInEmailResult> signIn = CodeAuth.SignInEmailAsync("a@b.c");
+        assertEquals(2, transport.held.size());
+
+        info.cancel(true);
+        signIn.cancel(true);
+        await(() -> transport.held.get(0).isCancelled());
+        await(() -> transport.held.get(1).isCancelled());
+    }
+
+    @Test
+    void cancellingGivesTheConcurrencySlotToTheNextCall() throws Exception {
+        start(false, 1);
+        CompletableFuture<CodeAuth.SignInEmailResult> first = CodeAuth.SignInEmailAsync("a@b.c");
+        CompletableFuture<CodeAuth.SignInEmailResult> second = CodeAuth.SignInEmailAsync("a@b.c");
+        // the only slot is taken: the second call waits for it
+        assertEquals(1, transport.attempts.get());
+        assertEquals(1, CodeAuth.GetMetrics().concurrency_in_flight);
+
+        first.cancel(true);
+        await(() -> transport.attempts.get() == 2);
+        assertTrue(transport.held.get(0).isCancelled());
+        assertEquals(1, CodeAuth.GetMetrics().concurrency_in_flight);
+
+        transport.answer(1, "{}");
+        assertEquals("no_error", second.join().error);
+        await(() -> CodeAuth.GetMetrics().concurrency_in_flight == 0);
+    }
+
+    @Test
+    void cancellingAWaitingCallNeverSendsIt() throws Exception {
+        start(false, 1);
+        CompletableFuture<CodeAuth.SignInEmailResult> first = CodeAuth.SignInEmailAsync("a@b.c");
+        CompletableFuture<CodeAuth.SignInEmailResult> second = CodeAuth.SignInEmailAsync("a@b.c");
+        second.cancel(true);
+
+        transport.answer(0, "{}");
+        assertEquals("no_error", first.join().error);
+        Thread.sleep(100);
+        assertEquals(1, transport.attempts.get());
+        assertEquals(0, CodeAuth.GetMetrics().concurrency_in_flight);
+    }
+}
@@ -0,0 +1,201 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The circuit breaker opens on failing or slow calls, rejects calls with 'circuit_open' while open, then lets a few
+ * trial calls through and closes or re-opens on their outcome
+ */
+class CircuitBreakerTest {
+    private static final String ENDPOINT = "https://example.com";
+
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final AtomicInteger sent = new AtomicInteger();
+    private final List<String> changes = new CopyOnWriteArrayList<>();
+    private final CodeAuth.CircuitBreakerListener listener = (endpoint, from, to) -> changes.add(endpoint + " " + from + "->" + to);
+
+    // every call reaches the transport, and fails like a network error while 'failing' is set
+    private final CodeAuth.InMemoryTransport transport = new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+        sent.incrementAndGet();
+        if (failing.get()) throw new IOException("connection refused");
+        return new CodeAuth.TransportResponse(200, "{\"email\":\"a@b.c\"}".getBytes(StandardCharsets.UTF_8), null);
+    });
+
+    @AfterEach
+    void stop() {
+        CodeAuth.RemoveCircuitBreakerListener(listener);
+        CodeAuth.Shutdown();
+    }
+
+    // opens once 2 of the last 4 calls failed, stays open 200ms, then lets 2 trial calls through
+    private static CodeAuth.InitializeOptions options(CodeAuth.Transport transport) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        options.circuit_window_size = 4;
+        options.circuit_min_calls = 4;
+        options.circuit_failure_rate_threshold = 50;
+        options.circuit_open_duration_ms = 200;
+        options.circuit_half_open_calls = 2;
+        return options;
+    }
+
+    private void start(CodeAuth.InitializeOptions options) {
+        CodeAuth.AddCircuitBreakerListener(listener);
+        CodeAuth.Initialize(ENDPOINT, "project", false, 30, options);
+    }
+
+    private void open() {
+        failing.set(true);
+        for (int i = 0; i < 4; i++) assertEquals("connection_error", CodeAuth.SessionInfo("token" + i).error);
+        assertEquals(CodeAuth.CircuitState.OPEN, CodeAuth.GetMetrics().circuit_state);
+    }
+
+    @Test
+    void opensOnFailuresAndRejectsCallsWithCircuitOpen() {
+        start(options(transport));
+        failing.set(true);
+        // under 'circuit_min_calls' the rate is not judged yet
+        for (int i = 0; i < 3; i++) CodeAuth.SessionInfo("token" + i);
+        assertEquals(CodeAuth.CircuitState.CLOSED, CodeAuth.GetMetrics().circuit_state);
+        CodeAuth.SessionInfo("token3");
+        assertEquals(CodeAuth.CircuitState.OPEN, CodeAuth.GetMetrics().circuit_state);
+
+        long rejected = CodeAuth.GetMetrics().circuit_rejected_calls;
+        failing.set(false);
+        assertEquals("circuit_open", CodeAuth.SessionInfo("token").error);
+        assertEquals("circuit_open", CodeAuth.SignInEmail("a@b.c").error);
+        // rejected without being sent
+        assertEquals(4, sent.get());
+        assertEquals(2, CodeAuth.GetMetrics().circuit_rejected_calls - rejected);
+        assertEquals(List.of(ENDPOINT + " CLOSED->OPEN"), changes);
+    }
+
+    @Test
+    void staysClosedUnderTheFailureRate() {
+        start(options(transport));
+        for (int i = 0; i < 20; i++) {
+            // one failure in four
+            failing.set(i % 4 == 0);
+            CodeAuth.SessionInfo("token" + i);
+        }
+        assertEquals(CodeAuth.CircuitState.CLOSED, CodeAuth.GetMetrics().circuit_state);
+        assertEquals(List.of(), changes);
+    }
+
+    @Test
+    void opensOnSlowCalls() {
+        CodeAuth.InitializeOptions options = options(new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+            Thread.sleep(20);
+            return new CodeAuth.TransportResponse(200, "{\"email\":\"a@b.c\"}".getBytes(StandardCharsets.UTF_8), null);
+        }));
+        options.circuit_slow_call_ms = 10;
+        options.circuit_slow_call_rate_threshold = 50;
+        start(options);
+        // every call succeeds, but too slowly
+        for (int i = 0; i < 4; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+        assertEquals(CodeAuth.CircuitState.OPEN, CodeAuth.GetMetrics().circuit_state);
+    }
+
+    @Test
+    void closesAgainAfterSuccessfulTrialCalls() throws Exception {
+        start(options(transport));
+        open();
+        failing.set(false);
+        Thread.sleep(250);
+
+        assertEquals("no_error", CodeAuth.SessionInfo("token").error);
+        assertEquals(CodeAuth.CircuitState.HALF_OPEN, CodeAuth.GetMetrics().circuit_state);
+        assertEquals("no_error", CodeAuth.SessionInfo("token").error);
+        assertEquals(CodeAuth.CircuitState.CLOSED, CodeAuth.GetMetrics().circuit_state);
+        assertEquals(List.of(ENDPOINT + " CLOSED->OPEN", ENDPOINT + " OPEN->HALF_OPEN", ENDPOINT + " HALF_OPEN->CLOSED"), changes);
+
+        // closed with a fresh window: the failures before do not count
+        failing.set(true);
+        CodeAuth.SessionInfo("token");
+        assertEquals(CodeAuth.CircuitState.CLOSED, CodeAuth.GetMetrics().circuit_state);
+    }
+
+    @Test
+    void reopensWhenATrialCallFails() throws Exception {
+        start(options(transport));
+        open();
+        Thread.sleep(250);
+
+        assertEquals("connection_error", CodeAuth.SessionInfo("token").error);
+        assertEquals(CodeAuth.CircuitState.OPEN, CodeAuth.GetMetrics().circuit_state);
+        assertEquals(List.of(ENDPOINT + " CLOSED->OPEN", ENDPOINT + " OPEN->HALF_OPEN", ENDPOINT + " HALF_OPEN->OPEN"), changes);
+        // open again for the whole duration
+        int before = sent.get();
+        assertEquals("circuit_open", CodeAuth.SessionInfo("token").error);
+        assertEquals(before, sent.get());
+    }
+
+    @Test
+    void letsOnlyTheTrialCallsThroughWhileHalfOpen() throws Exception {
+        HeldTransport held = new HeldTransport(true);
+        start(options(held));
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<CodeAuth.SessionInfoResult> result = CodeAuth.SessionInfoAsync("token" + i);
+            held.held.get(i).completeExceptionally(new IOException("connection refused"));
+            assertEquals("connection_error", result.join().error);
+        }
+        Thread.sleep(250);
+
+        List<CompletableFuture<CodeAuth.SessionInfoResult>> trials = new ArrayList<>();
+        for (int i = 0; i < 2; i++) trials.add(CodeAuth.SessionInfoAsync("trial" + i));
+        // both trial permits are taken until the trials finish
+        assertEquals("circuit_open", CodeAuth.SessionInfoAsync("other").join().error);
+        assertEquals(6, held.attempts.get());
+
+        held.answer(4);
+        held.answer(5);
+        for (CompletableFuture<CodeAuth.SessionInfoResult> trial : trials) assertEquals("no_error", trial.join().error);
+        assertEquals(CodeAuth.CircuitState.CLOSED, CodeAuth.GetMetrics().circuit_state);
+    }
+
+    @Test
+    void keepsCallingTheOtherListenersWhenOneThrows() {
+        CodeAuth.CircuitBreakerListener faulty = (endpoint, from, to) -> {
+            throw new IllegalStateException("listener bug");
+        };
+        CodeAuth.AddCircuitBreakerListener(faulty);
+        try {
+            start(options(transport));
+            open();
+            assertEquals(List.of(ENDPOINT + " CLOSED->OPEN"), changes);
+        } finally {
+            CodeAuth.RemoveCircuitBreakerListener(faulty);
+        }
+    }
+
+    @Test
+    void stopsNotifyingARemovedListener() {
+        start(options(transport));
+        CodeAuth.RemoveCircuitBreakerListener(listener);
+        open();
+        assertEquals(List.of(), changes);
+    }
+
+    @Test
+    void neverRejectsWhenDisabled() {
+        CodeAuth.InitializeOptions options = options(transport);
+        options.circuit_breaker = false;
+        start(options);
+        failing.set(true);
+        for (int i = 0; i < 10; i++) assertEquals("connection_error", CodeAuth.SessionInfo("token" + i).error);
+        assertEquals(10, sent.get());
+        assertEquals(List.of(), changes);
+    }
+}
@@ -0,0 +1,142 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Concurrent SessionInfo cache misses for one token share a single '/session/info' call
+ */
+class CoalescingTest {
+    private final HeldTransport transport = new HeldTransport(true);
+    // the calls sent, answered by the test
+    private final List<CompletableFuture<CodeAuth.TransportResponse>> calls = transport.held;
+
+    @BeforeEach
+    void start() {
+        start(10000);
+    }
+
+    private void start(int requestTimeoutMs) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        options.request_timeout_ms = requestTimeoutMs;
+        CodeAuth.Initialize("https://example.com", "project", false, 30, options);
+    }
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    @Test
+    void sharesOneCallBetweenConcurrentMisses() {
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        List<CompletableFuture<CodeAuth.SessionInfoResult>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) results.add(CodeAuth.SessionInfoAsync("token"));
+        assertEquals(1, calls.size());
+
+        transport.answer(0, "{\"email\":\"a@b.c\",\"refresh_left\":3}");
+        for (CompletableFuture<CodeAuth.SessionInfoResult> result : results) {
+            assertEquals("no_error", result.join().error);
+            assertEquals("a@b.c", result.join().email);
+        }
+        // every caller gets its own copy
+        assertNotSame(results.get(0).join(), results.get(1).join());
+
+        CodeAuth.Metrics after = CodeAuth.GetMetrics();
+        assertEquals(1, after.session_info_upstream_calls - before.session_info_upstream_calls);
+        assertEquals(9, after.session_info_coalesced_calls - before.session_info_coalesced_calls);
+    }
+
+    @Test
+    void doesNotShareBetweenTokens() {
+        CodeAuth.SessionInfoAsync("token1");
+        CodeAuth.SessionInfoAsync("token2");
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    void startsANewCallOnceTheSharedOneIsDone() {
+        CompletableFuture<CodeAuth.SessionInfoResult> first = CodeAuth.SessionInfoAsync("token");
+        transport.answer(0, "{\"email\":\"a@b.c\"}");
+        assertEquals("a@b.c", first.join().email);
+
+        CompletableFuture<CodeAuth.SessionInfoResult> second = CodeAuth.SessionInfoAsync("token");
+        assertEquals(2, calls.size());
+        transport.answer(1, "{\"email\":\"x@y.z\"}");
+        assertEquals("x@y.z", second.join().email);
+    }
+
+    @Test
+    void sharesAFailureWithEveryCaller() {
+        CompletableFuture<CodeAuth.SessionInfoResult> first = CodeAuth.SessionInfoAsync("token");
+        CompletableFuture<CodeAuth.SessionInfoResult> second = CodeAuth.SessionInfoAsync("token");
+        calls.get(0).completeExceptionally(new IOException("connection reset"));
+        assertEquals("connection_error", first.join().error);
+        assertEquals("connection_error", second.join().error);
+    }
+
+    @Test
+    void keepsTheSharedCallForTheCallersThatRemain() {
+        CompletableFuture<CodeAuth.SessionInfoResult> leaving = CodeAuth.SessionInfoAsync("token");
+        CompletableFuture<CodeAuth.SessionInfoResult> staying = CodeAuth.SessionInfoAsync("token");
+        leaving.cancel(true);
+        assertFalse(calls.get(0).isCancelled());
+
+        transport.answer(0, "{\"email\":\"a@b.c\"}");
+        assertEquals("a@b.c", staying.join().email);
+    }
+
+    @Test
+    void abortsTheSharedCallOnceEveryCallerLeft() {
+        CompletableFuture<CodeAuth.SessionInfoResult> first = CodeAuth.SessionInfoAsync("token");
+        CompletableFuture<CodeAuth.SessionInfoResult> second = CodeAuth.SessionInfoAsync("token");
+        first.cancel(true);
+        second.cancel(true);
+        assertTrue(calls.get(0).isCancelled());
+
+        // the next miss does not join the aborted call
+        CodeAuth.SessionInfoAsync("token");
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    void startsANewCallForACallerThatOutlivesTheSharedOne() throws Exception {
+        // the shared call gives up after 200ms, the second caller can wait 5s
+        CodeAuth.Shutdown();
+        start(200);
+        CompletableFuture<CodeAuth.SessionInfoResult> leader = CodeAuth.SessionInfoAsync("token");
+        CompletableFuture<CodeAuth.SessionInfoResult> patient = CodeAuth.SessionInfoAsync("token", CodeAuth.Deadline.After(Duration.ofSeconds(5)));
+        assertEquals("timeout_error", leader.join().error);
+
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (calls.size() < 2 && System.nanoTime() < deadline) Thread.sleep(5);
+        assertEquals(2, calls.size());
+        assertFalse(patient.isDone());
+        transport.answer(1, "{\"email\":\"a@b.c\"}");
+        assertEquals("a@b.c", patient.join().email);
+    }
+
+    @Test
+    void sharesTheTimeoutWithCallersThatHaveNoMoreTime() {
+        CodeAuth.Shutdown();
+        start(200);
+        CompletableFuture<CodeAuth.SessionInfoResult> leader = CodeAuth.SessionInfoAsync("token");
+        CompletableFuture<CodeAuth.SessionInfoResult> follower = CodeAuth.SessionInfoAsync("token", CodeAuth.Deadline.After(Duration.ofMillis(100)));
+        assertEquals("timeout_error", follower.join().error);
+        assertEquals("timeout_error", leader.join().error);
+        assertEquals(1, calls.size());
+    }
+}
@@ -0,0 +1,86 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A call's Deadline ends it with 'timeout_error', whether it goes to the api, joins a shared call or would be served
+ * from the cache
+ */
+class DeadlineTest {
+    private static final CodeAuth.Deadline EXPIRED = CodeAuth.Deadline.After(Duration.ofMillis(-1));
+
+    private final HeldTransport transport = new HeldTransport(true);
+
+    @BeforeEach
+    void start() {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        options.circuit_breaker = false;
+        CodeAuth.Initialize("https://example.com", "project", true, 30, options);
+    }
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    @Test
+    void endsADirectCallAtItsDeadline() {
+        assertEquals("timeout_error", CodeAuth.SignInEmail("a@b.c", EXPIRED).error);
+        assertEquals(0, transport.attempts.get());
+
+        long start = System.nanoTime();
+        assertEquals("timeout_error", CodeAuth.SignInEmail("a@b.c", CodeAuth.Deadline.After(Duration.ofMillis(100))).error);
+        assertTrue(System.nanoTime() - start >= 90_000_000L, "timed out after " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        // the exchange is aborted, just after the caller got its answer
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (!transport.held.get(0).isDone() && System.nanoTime() < deadline) Thread.onSpinWait();
+        assertTrue(transport.held.get(0).isCancelled());
+    }
+
+    @Test
+    void endsACoalescedWaitAtItsDeadline() {
+        CompletableFuture<CodeAuth.SessionInfoResult> leader = CodeAuth.SessionInfoAsync("token");
+        assertEquals("timeout_error", CodeAuth.SessionInfoAsync("token", EXPIRED).join().error);
+        assertEquals("timeout_error", CodeAuth.SessionInfoAsync("token", CodeAuth.Deadline.After(Duration.ofMillis(100))).join().error);
+        // the shared call goes on for the others
+        assertEquals(1, transport.attempts.get());
+        assertFalse(leader.isDone());
+        transport.answer(0);
+        assertEquals("no_error", leader.join().error);
+    }
+
+    @Test
+    void failsAnExpiredDeadlineEvenForACachedSession() {
+        transport.hold = false;
+        assertEquals("no_error", CodeAuth.SessionInfo("token").error);
+
+        assertEquals("timeout_error", CodeAuth.SessionInfo("token", EXPIRED).error);
+        assertEquals("timeout_error", CodeAuth.SessionInfoBatch(List.of("token", "other"), EXPIRED).get("token").error);
+        // with time left, the cached session is served without a call
+        assertEquals("no_error", CodeAuth.SessionInfo("token", CodeAuth.Deadline.After(Duration.ofSeconds(1))).error);
+        assertEquals(1, transport.attempts.get());
+    }
+
+    @Test
+    void failsEveryTokenOfABatchPastItsDeadline() {
+        transport.hold = false;
+        CodeAuth.SessionInfo("cached");
+
+        Map<String, CodeAuth.SessionInfoResult> results = CodeAuth.SessionInfoBatch(List.of("cached", "a", "b", "a"), EXPIRED);
+        assertEquals(List.of("cached", "a", "b"), List.copyOf(results.keySet()));
+        for (CodeAuth.SessionInfoResult result : results.values()) assertEquals("timeout_error", result.error);
+        assertEquals(1, transport.attempts.get());
+    }
+}
@@ -0,0 +1,333 @@
+package CodeAuthSDK;
+
+import static CodeAuthSDK.EmulatorJson.escape;
+
+import CodeAuthSDK.CodeAuth.InMemoryTransport;
+import CodeAuthSDK.CodeAuth.Transport;
+import CodeAuthSDK.CodeAuth.TransportResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for the CodeAuth api, to test and load test without the real service. Keeps codes and sessions
+ * in memory (with their expiration, refresh_left and the invalidate types) and injects latency and faults.
+ * Serve it over http with Start and give its Endpoint() to Initialize, or skip the network with AsTransport()
+ */
+public final class Emulator {
+    private static final double P99_Z = 2.3263;
+
+    // expiration in unix seconds, like the api returns it
+    private static final class Session {
+        final String email;
+        final long expiration;
+        final int refreshLeft;
+
+        Session(String email, long expiration, int refreshLeft) {
+            this.email = email;
+            this.expiration = expiration;
+            this.refreshLeft = refreshLeft;
+        }
+    }
+
+    private static final class Code {
+        final String code;
+        final long issuedAtMillis;
+        final long expiresAtMillis;
+
+        Code(String code, long issuedAtMillis, long expiresAtMillis) {
+            this.code = code;
+            this.issuedAtMillis = issuedAtMillis;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final String projectId;
+    private final EmulatorOptions options;
+    private final Random random;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    // latest code of every email
+    private final ConcurrentHashMap<String, Code> codes = new ConcurrentHashMap<>();
+    // authorization codes a social provider would hand out, and the email they sign in
+    private final ConcurrentHashMap<String, String> socialCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    /**
+     * Creates an emulator without serving it. See Start and AsTransport
+     * @param project_id The project ID the calls must carry, otherwise they get 'project_not_found'
+     * @param options Options, or null for the defaults
+     */
+    public Emulator(String project_id, EmulatorOptions options) {
+        this.projectId = project_id;
+        this.options = options != null ? options : new EmulatorOptions();
+        this.random = this.options.seed != 0 ? new Random(this.options.seed) : new Random();
+    }
+
+    /**
+     * Starts an emulator serving http on the loopback interface. The jdk server writes the head and the body of a
+     * response separately, so unless the JVM runs with -Dsun.net.httpserver.nodelay=true every call also waits on
+     * delayed acks (~40ms)
+     * @param project_id The project ID the calls must carry
+     * @param port The port to listen on, 0 picks a free one
+     * @param options Options, or null for the defaults
+     * @return The running emulator
+     */
+    public static Emulator Start(String project_id, int port, EmulatorOptions options) throws IOException {
+        Emulator emulator = new Emulator(project_id, options);
+        emulator.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        emulator.serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        emulator.server.setExecutor(emulator.serverExecutor);
+        emulator.server.createContext("/", emulator::serve);
+        emulator.server.start();
+        return emulator;
+    }
+
+    /**
+     * Gets the endpoint to give to Initialize, e.g. "http://127.0.0.1:8080"
+     * @return
+     */
+    public String Endpoint() {
+        if (server == null) throw new IllegalStateException("the emulator is not started");
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    /**
+     * Stops serving http
+     */
+    public void Stop() {
+        if (server == null) return;
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Gets a Transport that answers from this emulator on the calling thread, without a network. Injected latency
+     * blocks the calling thread, and injected resets fail the call with an IOException
+     * @return
+     */
+    public Transport AsTransport() {
+        return new InMemoryTransport((endpoint, path, body) -> {
+            TransportResponse response = respond(path, body);
+            if (response == null) throw new IOException("connection reset by the emulator");
+            return response;
+        });
+    }
+
+    /**
+     * Gets the code that '/signin/email' would have sent to an email
+     * @return The code, or null when there is none (or it expired)
+     */
+    public String GetCode(String email) {
+        Code code = codes.get(email);
+        return code != null && code.expiresAtMillis > nowMillis() ? code.code : null;
+    }
+
+    /**
+     * Creates the authorization code a social provider would give back after the user signed in with it
+     * @param email The email of the user's social account
+     * @return The code to give to '/signin/socialverify'
+     */
+    public String CreateSocialCode(String email) {
+        String code = randomToken();
+        socialCodes.put(code, email);
+        return code;
+    }
+
+    /**
+     * Gets the number of live sessions
+     * @return
+     */
+    public int SessionCount() {
+        return sessions.size();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            TransportResponse response = "POST".equals(exchange.getRequestMethod()) ? respond(exchange.getRequestURI().getPath(), body) : new TransportResponse(404, null, null);
+            // closing without an answer drops the connection, the client sees it reset
+            if (response == null) return;
+            for (Map.Entry<String, List<String>> header : response.headers.entrySet()) exchange.getResponseHeaders().put(header.getKey(), header.getValue());
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+            exchange.getResponseBody().write(response.body);
+        }
+    }
+
+    // -------
+    // Answers one api call after the injected latency, dated like a real server. null means the connection is dropped
+    // -------
+    TransportResponse respond(String path, byte[] body) {
+        TransportResponse response = answer(path, body);
+        if (response == null) return null;
+        Map<String, List<String>> headers = new HashMap<>(response.headers);
+        headers.put("Date", List.of(DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(nowMillis()).atZone(ZoneOffset.UTC))));
+        return new TransportResponse(response.status, response.body, headers);
+    }
+
+    private TransportResponse answer(String path, byte[] body) {
+        EmulatorOptions o = options;
+        double roll = random.nextDouble();
+        try {
+            Thread.sleep(Duration.ofNanos(latencyNanos(o)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if ((roll -= o.reset_rate) < 0) return null;
+        if ((roll -= o.error_rate) < 0) return error(500, "internal_error");
+        if ((roll -= o.rate_limit_rate) < 0) {
+            return new TransportResponse(429, errorBody("rate_limit_reached"), Map.of("Retry-After", List.of(String.valueOf(o.retry_after))));
+        }
+
+        Map<String, String> request = body != null ? EmulatorJson.read(body) : null;
+        if (request == null) return error(400, "bad_json");
+        if (!projectId.equals(request.get("project_id"))) return error(400, "project_not_found");
+        return switch (path) {
+            case "/signin/email" -> signInEmail(request);
+            case "/signin/emailverify" -> signInEmailVerify(request);
+            case "/signin/social" -> signInSocial(request);
+            case "/signin/socialverify" -> signInSocialVerify(request);
+            case "/session/info" -> sessionInfo(request);
+            case "/session/refresh" -> sessionRefresh(request);
+            case "/session/invalidate" -> sessionInvalidate(request);
+            default -> new TransportResponse(404, null, null);
+        };
+    }
+
+    // log-normal with the configured median and 99th percentile
+    private long latencyNanos(EmulatorOptions o) {
+        if (o.latency_ms <= 0) return 0;
+        double sigma = o.latency_p99_ms > o.latency_ms ? Math.log(o.latency_p99_ms / o.latency_ms) / P99_Z : 0;
+        return (long) (o.latency_ms * Math.exp(sigma * random.nextGaussian()) * 1_000_000);
+    }
+
+    private TransportResponse signInEmail(Map<String, String> request) {
+        String email = request.get("email");
+        if (email == null || !email.matches("[^@\\s]+@[^@\\s]+\\.[^@\\s]+")) return error(400, "bad_email");
+        long now = nowMillis();
+        Code previous = codes.get(email);
+        if (previous != null && now - previous.issuedAtMillis < options.code_request_interval * 1000L) return error(400, "code_request_interval_reached");
+        codes.put(email, new Code(String.format("%06d", random.nextInt(1_000_000)), now, now + options.code_duration * 1000L));
+        return ok("{}");
+    }
+
+    private TransportResponse signInEmailVerify(Map<String, String> request) {
+        String email = request.get("email");
+        String code = request.get("code");
+        Code expected = email != null ? codes.get(email) : null;
+        if (expected == null || expected.expiresAtMillis <= nowMillis() || !expected.code.equals(code) || !codes.remove(email, expected)) {
+            return error(400, "bad_code");
+        }
+        return newSession(email, options.refresh_count);
+    }
+
+    private TransportResponse signInSocial(Map<String, String> request) {
+        String socialType = request.get("social_type");
+        if (socialType == null || !options.social_types.contains(socialType)) return error(400, "bad_social_type");
+        return ok("{\"signin_url\":\"https://" + escape(socialType) + ".example/oauth?state=" + randomToken() + "\"}");
+    }
+
+    private TransportResponse signInSocialVerify(Map<String, String> request) {
+        String socialType = request.get("social_type");
+        if (socialType == null || !options.social_types.contains(socialType)) return error(400, "bad_social_type");
+        String code = request.get("authorization_code");
+        String email = code != null ? socialCodes.remove(code) : null;
+        if (email == null) return error(400, "bad_code");
+        return newSession(email, options.refresh_count);
+    }
+
+    private TransportResponse sessionInfo(Map<String, String> request) {
+        String token = request.get("session_token");
+        Session session = liveSession(token);
+        if (session == null) return error(400, "bad_session_token");
+        return ok("{\"email\":\"" + escape(session.email) + "\",\"expiration\":" + session.expiration + ",\"refresh_left\":" + session.refreshLeft + "}");
+    }
+
+    private TransportResponse sessionRefresh(Map<String, String> request) {
+        String token = request.get("session_token");
+        Session session = liveSession(token);
+        if (session == null) return error(400, "bad_session_token");
+        if (session.refreshLeft <= 0) return error(400, "out_of_refresh");
+        // the old token stops working
+        if (!sessions.remove(token, session)) return error(400, "bad_session_token");
+        return newSession(session.email, session.refreshLeft - 1);
+    }
+
+    private TransportResponse sessionInvalidate(Map<String, String> request) {
+        String token = request.get("session_token");
+        String type = request.get("invalidate_type");
+        Session session = liveSession(token);
+        if (session == null) return error(400, "bad_session_token");
+        switch (type != null ? type : "") {
+            case "only_this" -> sessions.remove(token);
+            case "all" -> sessions.values().removeIf(other -> other.email.equals(session.email));
+            case "all_but_this" -> sessions.entrySet().removeIf(other -> other.getValue().email.equals(session.email) && !other.getKey().equals(token));
+            default -> {
+                return error(400, "bad_invalidate_type");
+            }
+        }
+        return ok("{}");
+    }
+
+    private Session liveSession(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session != null && session.expiration * 1000 <= nowMillis()) {
+            sessions.remove(token, session);
+            return null;
+        }
+        return session;
+    }
+
+    private TransportResponse newSession(String email, int refreshLeft) {
+        long now = nowMillis();
+        // sessions that are never looked up again would pile up during load tests
+        if (created.incrementAndGet() % 1024 == 0) sessions.values().removeIf(s -> s.expiration * 1000 <= now);
+        String token = randomToken();
+        Session session = new Session(email, now / 1000 + options.session_duration, refreshLeft);
+        sessions.put(token, session);
+        return ok("{\"session_token\":\"" + token + "\",\"email\":\"" + escape(email) + "\",\"expiration\":" + session.expiration + ",\"refresh_left\":" + refreshLeft + "}");
+    }
+
+    private long nowMillis() {
+        return System.currentTimeMillis() + options.clock_offset_ms;
+    }
+
+    private String randomToken() {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static TransportResponse ok(String json) {
+        return new TransportResponse(200, json.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    private static TransportResponse error(int status, String error) {
+        return new TransportResponse(status, errorBody(error), null);
+    }
+
+    private static byte[] errorBody(String error) {
+        return ("{\"error\":\"" + error + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
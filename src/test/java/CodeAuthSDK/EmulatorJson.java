@@ -0,0 +1,131 @@
+package CodeAuthSDK;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The emulator's own json: reads the flat objects the SDK sends, and escapes the strings it answers with. Kept apart
+ * from the SDK's reader, which only knows the fields of the responses
+ */
+final class EmulatorJson {
+    private final String json;
+    private int pos;
+
+    private EmulatorJson(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Reads the top-level fields of a request body. Strings keep their value, numbers, true, false and null their
+     * text, and nested values are not supported
+     * @return The fields by key, or null when the body is not such an object
+     */
+    static Map<String, String> read(byte[] body) {
+        EmulatorJson reader = new EmulatorJson(new String(body, StandardCharsets.UTF_8));
+        Map<String, String> fields = reader.readObject();
+        return fields != null && reader.pos == reader.json.length() ? fields : null;
+    }
+
+    /**
+     * Escapes a string to put between the quotes of a json string
+     */
+    static String escape(String s) {
+        StringBuilder escaped = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+                    else escaped.append(c);
+                }
+            }
+        }
+        return escaped.toString();
+    }
+
+    private Map<String, String> readObject() {
+        Map<String, String> fields = new HashMap<>();
+        skipWhitespace();
+        if (!consume('{')) return null;
+        skipWhitespace();
+        if (!consume('}')) {
+            do {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                if (key == null || !consume(':')) return null;
+                skipWhitespace();
+                String value = peek() == '"' ? readString() : readLiteral();
+                if (value == null) return null;
+                fields.put(key, value);
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume('}')) return null;
+        }
+        skipWhitespace();
+        return fields;
+    }
+
+    private String readString() {
+        if (!consume('"')) return null;
+        StringBuilder value = new StringBuilder();
+        while (pos < json.length()) {
+            char c = json.charAt(pos++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos >= json.length()) return null;
+            char escaped = json.charAt(pos++);
+            switch (escaped) {
+                case '"', '\\', '/' -> value.append(escaped);
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > json.length()) return null;
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    pos += 4;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    // a number, true, false or null, as written
+    private String readLiteral() {
+        int start = pos;
+        while (pos < json.length() && (Character.isLetterOrDigit(json.charAt(pos)) || "+-.".indexOf(json.charAt(pos)) >= 0)) pos++;
+        return pos > start ? json.substring(start, pos) : null;
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+    }
+
+    private char peek() {
+        return pos < json.length() ? json.charAt(pos) : 0;
+    }
+
+    private boolean consume(char c) {
+        if (peek() != c) return false;
+        pos++;
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package CodeAuthSDK;
+
+import java.util.Set;
+
+/**
+ * Options of an Emulator. The latency and fault fields may be changed while it is running
+ */
+public class EmulatorOptions {
+    /** How long a session lasts, in seconds. */
+    public int session_duration = 3600;
+    /** Number of times a session can be refreshed. */
+    public int refresh_count = 3;
+    /** How long a code sent by '/signin/email' can be used, in seconds. */
+    public int code_duration = 600;
+    /** Minimum time between two codes sent to the same email, in seconds. 0 means no limit. */
+    public int code_request_interval = 0;
+    /** Accepted social types. */
+    public Set<String> social_types = Set.of("google", "microsoft", "apple", "github");
+    /** Median response time, in milliseconds. 0 answers right away. */
+    public volatile double latency_ms = 0;
+    /** 99th percentile response time, in milliseconds. Response times follow a log-normal distribution with this tail. Not above latency_ms means every call takes latency_ms. */
+    public volatile double latency_p99_ms = 0;
+    /** Fraction of calls (between 0 and 1) answered with 500 'internal_error'. */
+    public volatile double error_rate = 0;
+    /** Fraction of calls answered with 429 'rate_limit_reached'. */
+    public volatile double rate_limit_rate = 0;
+    /** 'Retry-After' of the 429 answers, in seconds. */
+    public volatile int retry_after = 1;
+    /** Fraction of calls whose connection is closed without an answer. */
+    public volatile double reset_rate = 0;
+    /** Seed of the random latencies, faults, codes and tokens, for repeatable runs. 0 picks a random seed. */
+    public long seed = 0;
+    /** How far the emulated server's clock runs ahead of the local one (negative when behind), in milliseconds. It shows in session expirations and codes, and in the 'Date' header of the answers of AsTransport() (over http the jdk server always dates answers with its own clock). */
+    public volatile long clock_offset_ms = 0;
+}
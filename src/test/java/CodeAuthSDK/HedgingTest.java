@@ -0,0 +1,137 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A read only call slower than the hedge percentile gets a second attempt, within the hedge budget. The first answer
+ * wins and the other attempt is cancelled
+ */
+class HedgingTest {
+    private static final long DELAY_MS = 100;
+
+    private final HeldTransport transport = new HeldTransport(false);
+    private final List<CompletableFuture<CodeAuth.TransportResponse>> calls = transport.held;
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    private void start(double budgetPercent) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        options.circuit_breaker = false;
+        options.hedge_requests = true;
+        options.hedge_min_delay_ms = (int) DELAY_MS;
+        options.hedge_budget_percent = budgetPercent;
+        CodeAuth.Initialize("https://example.com", "project", false, 30, options);
+        // fills the response times of the api with instant answers, so the delay is 'hedge_min_delay_ms'
+        for (int i = 0; i < 256; i++) CodeAuth.SessionInfo("warm" + i);
+        transport.hold = true;
+    }
+
+    // waits up to 2s for 'count' calls to be sent
+    private void awaitCalls(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (calls.size() < count && System.nanoTime() < deadline) Thread.sleep(5);
+        assertEquals(count, calls.size());
+    }
+
+    @Test
+    void hedgesOnlyAfterTheDelay() throws Exception {
+        start(5);
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        long start = System.nanoTime();
+        CompletableFuture<CodeAuth.SessionInfoResult> result = CodeAuth.SessionInfoAsync("token");
+        Thread.sleep(DELAY_MS / 2);
+        assertEquals(1, calls.size());
+
+        awaitCalls(2);
+        assertTrue(System.nanoTime() - start >= DELAY_MS * 1_000_000, "hedged after " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        assertEquals(1, CodeAuth.GetMetrics().hedged_requests - before.hedged_requests);
+
+        // the hedge answers first: it wins and the first attempt is cancelled
+        transport.answer(1);
+        assertEquals("no_error", result.join().error);
+        assertTrue(calls.get(0).isCancelled());
+        assertEquals(1, CodeAuth.GetMetrics().hedged_requests_won - before.hedged_requests_won);
+    }
+
+    @Test
+    void cancelsTheHedgeWhenTheFirstAttemptAnswers() throws Exception {
+        start(5);
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        CompletableFuture<CodeAuth.SessionInfoResult> result = CodeAuth.SessionInfoAsync("token");
+        awaitCalls(2);
+
+        transport.answer(0);
+        assertEquals("no_error", result.join().error);
+        assertTrue(calls.get(1).isCancelled());
+        assertEquals(0, CodeAuth.GetMetrics().hedged_requests_won - before.hedged_requests_won);
+    }
+
+    @Test
+    void sendsNoHedgeForAnAnswerWithinTheDelay() throws Exception {
+        start(5);
+        CompletableFuture<CodeAuth.SessionInfoResult> result = CodeAuth.SessionInfoAsync("token");
+        transport.answer(0);
+        assertEquals("no_error", result.join().error);
+        Thread.sleep(DELAY_MS * 2);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    void waitsForTheHedgeWhenTheFirstAttemptFails() throws Exception {
+        start(5);
+        CompletableFuture<CodeAuth.SessionInfoResult> result = CodeAuth.SessionInfoAsync("token");
+        awaitCalls(2);
+
+        calls.get(0).completeExceptionally(new IOException("connection reset"));
+        assertFalse(result.isDone());
+        transport.answer(1);
+        assertEquals("no_error", result.join().error);
+    }
+
+    @Test
+    void sendsNoHedgeOnceTheBudgetIsDrained() throws Exception {
+        // the budget starts with 10 hedges, and earns nothing back
+        start(0);
+        List<CompletableFuture<CodeAuth.SessionInfoResult>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) results.add(CodeAuth.SessionInfoAsync("token" + i));
+        awaitCalls(20);
+        for (int i = 0; i < 20; i++) transport.answer(i);
+        for (CompletableFuture<CodeAuth.SessionInfoResult> result : results) assertEquals("no_error", result.join().error);
+
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        CompletableFuture<CodeAuth.SessionInfoResult> result = CodeAuth.SessionInfoAsync("token");
+        Thread.sleep(DELAY_MS * 3);
+        assertEquals(21, calls.size());
+        assertEquals(0, CodeAuth.GetMetrics().hedged_requests - before.hedged_requests);
+        transport.answer(20);
+        assertEquals("no_error", result.join().error);
+    }
+
+    @Test
+    void neverHedgesCallsWithSideEffects() throws Exception {
+        start(5);
+        transport.hold = false;
+        for (int i = 0; i < 256; i++) CodeAuth.SignInEmail("a@b.c");
+        transport.hold = true;
+
+        CompletableFuture<CodeAuth.SignInEmailResult> result = CodeAuth.SignInEmailAsync("a@b.c");
+        Thread.sleep(DELAY_MS * 3);
+        assertEquals(1, calls.size());
+        transport.answer(0, "{}");
+        assertEquals("no_error", result.join().error);
+    }
+}
@@ -0,0 +1,50 @@
+package CodeAuthSDK;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Transport whose calls stay in flight until the test answers them, while 'hold' is set. Otherwise every call is
+ * answered at once with 'answer'. Close fails the calls still held, like a real transport's Shutdown
+ */
+final class HeldTransport implements CodeAuth.Transport {
+    final AtomicInteger attempts = new AtomicInteger();
+    final List<CompletableFuture<CodeAuth.TransportResponse>> held = new CopyOnWriteArrayList<>();
+    volatile boolean hold;
+    volatile String answer = "{\"email\":\"a@b.c\"}";
+
+    HeldTransport(boolean hold) {
+        this.hold = hold;
+    }
+
+    @Override
+    public CompletableFuture<CodeAuth.TransportResponse> SendAsync(String endpoint, String path, byte[] body, long timeoutNanos) {
+        attempts.incrementAndGet();
+        if (!hold) return CompletableFuture.completedFuture(ok(answer));
+        CompletableFuture<CodeAuth.TransportResponse> call = new CompletableFuture<>();
+        held.add(call);
+        return call;
+    }
+
+    @Override
+    public void Close() {
+        for (CompletableFuture<CodeAuth.TransportResponse> call : held) call.completeExceptionally(new IOException("transport closed"));
+    }
+
+    // answers the held call 'index' (in the order they were sent) with a 200 and 'body'
+    void answer(int index, String body) {
+        held.get(index).complete(ok(body));
+    }
+
+    void answer(int index) {
+        answer(index, answer);
+    }
+
+    private static CodeAuth.TransportResponse ok(String body) {
+        return new CodeAuth.TransportResponse(200, body.getBytes(StandardCharsets.UTF_8), null);
+    }
+}
@@ -0,0 +1,122 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * HttpTransport reads bodies of a known length straight into place and others into scratch buffers, and fails a body
+ * over 'max_response_bytes' without reading all of it
+ */
+class HttpTransportTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final byte[] BODY = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private ScriptedServer server;
+    private CodeAuth.HttpTransport transport;
+
+    @AfterEach
+    void stop() throws IOException {
+        if (transport != null) transport.Close();
+        if (server != null) server.close();
+    }
+
+    private void start(int maxResponseBytes, ScriptedServer.Script script) throws IOException {
+        server = new ScriptedServer(script);
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.use_http2 = false;
+        options.max_response_bytes = maxResponseBytes;
+        transport = new CodeAuth.HttpTransport(options);
+    }
+
+    private CompletableFuture<CodeAuth.TransportResponse> send() {
+        return transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS);
+    }
+
+    private static Throwable failure(CompletableFuture<CodeAuth.TransportResponse> call) {
+        return assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    // a chunked body of 'chunks' chunks of 'size' bytes
+    private static String chunked(int chunks, int size) {
+        StringBuilder response = new StringBuilder("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+        for (int i = 0; i < chunks; i++) response.append(Integer.toHexString(size)).append("\r\n").append("x".repeat(size)).append("\r\n");
+        return response.append("0\r\n\r\n").toString();
+    }
+
+    @Test
+    void rejectsAnOversizedContentLengthUpFront() throws Exception {
+        // the head announces a body over the limit and the body never comes: the call fails without waiting for it
+        start(1024, connection -> {
+            connection.readRequest();
+            connection.write("HTTP/1.1 200 OK\r\nContent-Length: 1048576\r\n\r\n");
+            connection.awaitClose();
+        });
+        long start = System.nanoTime();
+        Throwable failure = failure(send());
+        assertInstanceOf(IOException.class, failure);
+        assertTrue(failure.getMessage().contains("too large"), failure.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    void rejectsAStreamedBodyOverTheLimit() throws Exception {
+        // no length up front: found out while reading
+        start(1024, connection -> {
+            connection.readRequest();
+            connection.write(chunked(8, 256));
+            connection.awaitClose();
+        });
+        Throwable failure = failure(send());
+        assertInstanceOf(IOException.class, failure);
+        assertTrue(failure.getMessage().contains("too large"), failure.getMessage());
+    }
+
+    @Test
+    void readsBodiesUpToTheLimit() throws Exception {
+        start(64 * 1024, connection -> {
+            String path;
+            while ((path = connection.readRequest()) != null) {
+                // exactly the limit with a length, then larger than a scratch buffer without one
+                if (connection.index == 0 && path.equals("/session/info")) connection.write(ScriptedServer.ok("y".repeat(64 * 1024)));
+                else connection.write(chunked(40, 1000));
+            }
+        });
+        CodeAuth.TransportResponse sized = send().get(5, TimeUnit.SECONDS);
+        assertEquals(200, sized.status);
+        assertArrayEquals("y".repeat(64 * 1024).getBytes(StandardCharsets.UTF_8), sized.body);
+
+        CodeAuth.TransportResponse streamed = transport.SendAsync(server.endpoint(), "/signin/email", BODY, TIMEOUT_NANOS).get(5, TimeUnit.SECONDS);
+        assertArrayEquals("x".repeat(40_000).getBytes(StandardCharsets.UTF_8), streamed.body);
+    }
+
+    @Test
+    void failsTheApiCallWithConnectionError() throws Exception {
+        start(16, connection -> {
+            connection.readRequest();
+            connection.write(ScriptedServer.ok("{\"email\":\"someone.with.a.long.address@example.com\"}"));
+            connection.awaitClose();
+        });
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        CodeAuth.Initialize(server.endpoint(), "project", false, 30, options);
+        try {
+            assertEquals("connection_error", CodeAuth.SessionInfo("token").error);
+        } finally {
+            CodeAuth.Shutdown();
+            // closed by Shutdown
+            transport = null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package CodeAuthSDK;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading every field of a response: the single pass JsonHelper against the helper it replaced, which decoded the
+ * body to a String and rescanned it with indexOf once per field. JsonHelper is private to CodeAuth, so it is called
+ * through a constant method handle, which the jit inlines like a direct call.
+ * Run with: mvn -Pbench test -Dbench=JsonParserBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonParserBenchmark {
+    private static final String VERIFY = "{\"session_token\":\"mgxhF71nQ-fcl4VzmY5oXohcs2H4bJdG\",\"email\":\"user@example.com\",\"expiration\":1792374831,\"refresh_left\":3}";
+    // the same fields after unknown ones, nested values and escapes
+    private static final String LARGE = "{\"request_id\":\"4b1f2c9e-8d3a-4f6b-9c2e-7a5d1e3f8b60\",\"meta\":{\"region\":\"eu-west\",\"flags\":[\"a\",\"b\",{\"c\":\"}\"}]},"
+        + "\"session_token\":\"mgxhF71nQ-fcl4VzmY5oXohcs2H4bJdG\",\"email\":\"first.last+tag\\u0040example.com\",\"note\":\"line one\\nline \\\"two\\\"\","
+        + "\"expiration\":1792374831,\"refresh_left\":3,\"trace\":[1,2,3,4,5,6,7,8,9,10]}";
+
+    // JsonHelper.read(byte[]), returning the JsonFields as an Object
+    private static final MethodHandle READ = singlePassReader();
+
+    @Param({ "verify", "large" })
+    public String body;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        bytes = (body.equals("verify") ? VERIFY : LARGE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) throws Throwable {
+        // every field is filled by the one pass, consuming the result keeps all of it
+        blackhole.consume((Object) READ.invokeExact(bytes));
+    }
+
+    @Benchmark
+    public void perFieldRescan(Blackhole blackhole) {
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        blackhole.consume(LegacyJsonHelper.getString(json, "error"));
+        blackhole.consume(LegacyJsonHelper.getString(json, "session_token"));
+        blackhole.consume(LegacyJsonHelper.getString(json, "email"));
+        blackhole.consume(LegacyJsonHelper.getLong(json, "expiration"));
+        blackhole.consume(LegacyJsonHelper.getInt(json, "refresh_left"));
+    }
+
+    private static MethodHandle singlePassReader() {
+        try {
+            Class<?> helper = Class.forName("CodeAuthSDK.CodeAuth$JsonHelper");
+            Class<?> fields = Class.forName("CodeAuthSDK.CodeAuth$JsonFields");
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(helper, MethodHandles.lookup());
+            return lookup.findStatic(helper, "read", MethodType.methodType(fields, byte[].class)).asType(MethodType.methodType(Object.class, byte[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // -------
+    // The previous JsonHelper, as it was, the baseline of the benchmark
+    // -------
+    private static final class LegacyJsonHelper {
+        static String getString(String json, String key) {
+            if (json == null || key == null) return null;
+            String pattern = "\"" + key + "\"";
+            int idx = json.indexOf(pattern);
+            if (idx == -1) return null;
+            int colon = json.indexOf(':', idx + pattern.length());
+            if (colon == -1) return null;
+
+            int start = json.indexOf('"', colon + 1);
+            if (start == -1) return null;
+            int end = json.indexOf('"', start + 1);
+            if (end == -1) return null;
+            return unescapeJson(json.substring(start + 1, end));
+        }
+
+        static long getLong(String json, String key) {
+            String raw = getRawToken(json, key);
+            if (raw == null) return 0L;
+            try {
+                return Long.parseLong(raw);
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        }
+
+        static int getInt(String json, String key) {
+            String raw = getRawToken(json, key);
+            if (raw == null) return 0;
+            try {
+                return Integer.parseInt(raw);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private static String getRawToken(String json, String key) {
+            if (json == null || key == null) return null;
+            String pattern = "\"" + key + "\"";
+            int idx = json.indexOf(pattern);
+            if (idx == -1) return null;
+            int colon = json.indexOf(':', idx + pattern.length());
+            if (colon == -1) return null;
+
+            int i = colon + 1;
+            while (i < json.length() && Character.isWhitespace(json.charAt(i))) i++;
+            if (i >= json.length()) return null;
+
+            if (json.charAt(i) == '"') {
+                int start = i + 1;
+                int end = json.indexOf('"', start);
+                if (end == -1) return null;
+                return unescapeJson(json.substring(start, end));
+            } else {
+                int j = i;
+                while (j < json.length() && json.charAt(j) != ',' && json.charAt(j) != '}' && !Character.isWhitespace(json.charAt(j))) j++;
+                if (j <= i) return null;
+                return json.substring(i, j).trim();
+            }
+        }
+
+        private static String unescapeJson(String s) {
+            if (s == null) return null;
+            return s.replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+    }
+}
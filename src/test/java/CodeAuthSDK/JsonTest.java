@@ -0,0 +1,169 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reading response bodies in a single pass, and writing request bodies straight to bytes, through the public api
+ */
+class JsonTest {
+    private static final String PROJECT_ID = "project";
+    // escapes, a 2 and a 3 byte character, and a character outside the BMP
+    private static final String AWKWARD = "a\"b\\c/d\n\t\u0001é€😀";
+
+    // what the transport answers, and the last request body it got
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final AtomicReference<String> answer = new AtomicReference<>();
+    private final AtomicReference<byte[]> lastRequest = new AtomicReference<>();
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    @Test
+    void readsEveryFieldOfAPlainBody() {
+        start(PROJECT_ID);
+        CodeAuth.SessionInfoResult result = infoAnswering("{\"email\":\"a@b.c\",\"expiration\":1792374831,\"refresh_left\":3}");
+        assertEquals("no_error", result.error);
+        assertEquals("a@b.c", result.email);
+        assertEquals(1792374831L, result.expiration);
+        assertEquals(3, result.refresh_left);
+    }
+
+    @Test
+    void decodesEscapesAndUnicode() {
+        start(PROJECT_ID);
+        String body = "{\"email\":\"a\\\"b\\\\c\\/d\\n\\t\\u0001\\u00e9€\\ud83d\\ude00\"}";
+        assertEquals(AWKWARD, infoAnswering(body).email);
+        // raw utf-8 and the same characters escaped read the same
+        assertEquals("é€😀", infoAnswering("{\"email\":\"é€😀\"}").email);
+        assertEquals("é€😀", infoAnswering("{\"email\":\"\\u00E9\\u20AC\\uD83D\\uDE00\"}").email);
+    }
+
+    @Test
+    void readsEscapedKeys() {
+        start(PROJECT_ID);
+        assertEquals("a@b.c", infoAnswering("{\"em\\u0061il\":\"a@b.c\"}").email);
+    }
+
+    @Test
+    void skipsUnknownKeysAndNestedValues() {
+        start(PROJECT_ID);
+        String body = " {\n \"request_id\" : \"x\\\"y\", \"note\": \"line\\n\\\\\", \"meta\": {\"email\":\"nested@b.c\", \"list\": [1, {\"refresh_left\": 9}, \"]}\"]},"
+            + " \"ok\": true, \"none\": null, \"ratio\": -1.5e3, \"email\" : \"a@b.c\" , \"expiration\": 1792374831, \"refresh_left\": 3 } ";
+        CodeAuth.SessionInfoResult result = infoAnswering(body);
+        assertEquals("a@b.c", result.email);
+        assertEquals(1792374831L, result.expiration);
+        assertEquals(3, result.refresh_left);
+    }
+
+    @Test
+    void readsNumbersGivenAsStringsAndDropsOutOfRangeOnes() {
+        start(PROJECT_ID);
+        CodeAuth.SessionInfoResult result = infoAnswering("{\"expiration\":\"1792374831\",\"refresh_left\":\"2\"}");
+        assertEquals(1792374831L, result.expiration);
+        assertEquals(2, result.refresh_left);
+        assertEquals(0, infoAnswering("{\"refresh_left\":4294967296}").refresh_left);
+    }
+
+    @Test
+    void keepsWhatWasReadBeforeMalformedInput() {
+        start(PROJECT_ID);
+        CodeAuth.SessionInfoResult truncated = infoAnswering("{\"email\":\"a@b.c\",\"refresh_left\":3,\"expiration\":");
+        assertEquals("a@b.c", truncated.email);
+        assertEquals(3, truncated.refresh_left);
+        assertEquals(0, truncated.expiration);
+
+        assertEquals("a@b.c", infoAnswering("{\"email\":\"a@b.c\" \"refresh_left\":3}").email);
+        assertEquals(0, infoAnswering("{\"email\":\"a@b.c\" \"refresh_left\":3}").refresh_left);
+        assertNull(infoAnswering("{\"email\":\"a@b.c").email);
+        assertNull(infoAnswering("{\"email\":\"bad \\x escape\"}").email);
+        assertNull(infoAnswering("{\"email\":\"\\u12\"}").email);
+    }
+
+    @Test
+    void readsNothingFromBodiesThatAreNotObjects() {
+        start(PROJECT_ID);
+        for (String body : new String[] { "", "   ", "[]", "[{\"email\":\"a@b.c\"}]", "\"email\"", "null", "<html>502</html>" }) {
+            CodeAuth.SessionInfoResult result = infoAnswering(body);
+            assertEquals("no_error", result.error, body);
+            assertNull(result.email, body);
+            assertEquals(0, result.expiration, body);
+        }
+    }
+
+    @Test
+    void readsTheErrorOfARejectedCall() {
+        start(PROJECT_ID);
+        status.set(400);
+        assertEquals("bad_session_token", infoAnswering("{\"message\":\"no \\\"such\\\" token\",\"error\":\"bad_session_token\"}").error);
+    }
+
+    @Test
+    void writesPlainRequestBodies() {
+        start(PROJECT_ID);
+        infoAnswering("{}");
+        assertEquals("{\"project_id\":\"project\",\"session_token\":\"token\"}", new String(lastRequest.get(), StandardCharsets.UTF_8));
+
+        answer.set("{}");
+        CodeAuth.SessionInvalidate("token", "all");
+        assertEquals("{\"project_id\":\"project\",\"session_token\":\"token\",\"invalidate_type\":\"all\"}", new String(lastRequest.get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void escapesAndEncodesRequestBodies() {
+        String projectId = "pro\"ject\\";
+        start(projectId);
+        answer.set("{}");
+        CodeAuth.SignInSocialVerify("goo\u0000gle", AWKWARD);
+        Map<String, String> request = EmulatorJson.read(lastRequest.get());
+        assertEquals(Map.of("project_id", projectId, "social_type", "goo\u0000gle", "authorization_code", AWKWARD), request);
+
+        CodeAuth.SignInEmail("é€😀@b.c");
+        assertEquals("é€😀@b.c", EmulatorJson.read(lastRequest.get()).get("email"));
+        // the characters themselves, as utf-8, not \\u escapes
+        assertEquals("{\"project_id\":\"pro\\\"ject\\\\\",\"email\":\"é€😀@b.c\"}", new String(lastRequest.get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void roundTripsAnswersOfTheEmulator() {
+        Emulator emulator = new Emulator(PROJECT_ID, null);
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = emulator.AsTransport();
+        CodeAuth.Initialize("https://example.com", PROJECT_ID, false, 30, options);
+
+        CodeAuth.SignInSocialVerifyResult session = CodeAuth.SignInSocialVerify("google", emulator.CreateSocialCode(AWKWARD));
+        assertEquals("no_error", session.error);
+        assertEquals(AWKWARD, session.email);
+
+        CodeAuth.SessionInfoResult info = CodeAuth.SessionInfo(session.session_token);
+        assertEquals("no_error", info.error);
+        assertEquals(AWKWARD, info.email);
+        assertEquals(session.expiration, info.expiration);
+        assertEquals(session.refresh_left, info.refresh_left);
+        assertEquals("bad_social_type", CodeAuth.SignInSocial("not \"a\" provider").error);
+    }
+
+    // a fresh SessionInfo call (no cache) answered with 'body'
+    private CodeAuth.SessionInfoResult infoAnswering(String body) {
+        answer.set(body);
+        return CodeAuth.SessionInfo("token");
+    }
+
+    private void start(String projectId) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+            lastRequest.set(body);
+            return new CodeAuth.TransportResponse(status.get(), answer.get().getBytes(StandardCharsets.UTF_8), null);
+        });
+        CodeAuth.Initialize("https://example.com", projectId, false, 30, options);
+    }
+}
@@ -0,0 +1,191 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The client side rate limiter, and the limits of calls in flight (pool_size, bulkheads) with their queues
+ */
+class LimiterTest {
+    // answers at once until the test holds its calls
+    private final HeldTransport transport = new HeldTransport(false);
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    @Test
+    void rejectsCallsOverTheRate() {
+        CodeAuth.InitializeOptions options = options();
+        options.rate_limit_per_second = 1;
+        start(options);
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        assertEquals("no_error", CodeAuth.SessionInfo("token1").error);
+        assertEquals("rate_limit_reached", CodeAuth.SessionInfo("token2").error);
+        assertEquals(1, transport.attempts.get());
+        assertEquals(1, CodeAuth.GetMetrics().rate_limited_calls - before.rate_limited_calls);
+    }
+
+    @Test
+    void letsABurstThrough() {
+        CodeAuth.InitializeOptions options = options();
+        options.rate_limit_per_second = 1;
+        options.rate_limit_burst = 5;
+        start(options);
+        for (int i = 0; i < 5; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+        assertEquals("rate_limit_reached", CodeAuth.SessionInfo("token5").error);
+    }
+
+    @Test
+    void delaysCallsThatMayWait() {
+        CodeAuth.InitializeOptions options = options();
+        options.rate_limit_per_second = 20;
+        options.rate_limit_burst = 1;
+        options.rate_limit_max_wait_ms = 1000;
+        start(options);
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+
+        // one call right away, then one every 50ms
+        assertTrue(System.nanoTime() - start >= 190_000_000L, "5 calls in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        assertEquals(4, CodeAuth.GetMetrics().rate_limit_queued_calls - before.rate_limit_queued_calls);
+    }
+
+    @Test
+    void givesBackTheTokenOfACancelledQueuedCall() {
+        CodeAuth.InitializeOptions options = options();
+        options.rate_limit_per_second = 1;
+        options.rate_limit_burst = 1;
+        options.rate_limit_max_wait_ms = 1500;
+        start(options);
+        assertEquals("no_error", CodeAuth.SignInEmail("a@b.c").error);
+        CompletableFuture<CodeAuth.SignInEmailResult> cancelled = CodeAuth.SignInEmailAsync("a@b.c");
+        cancelled.cancel(true);
+
+        // the next call waits for the token the cancelled one gave back (1s), not for the one after it (2s)
+        assertEquals("no_error", CodeAuth.SignInEmail("a@b.c").error);
+        assertEquals(2, transport.attempts.get());
+    }
+
+    @Test
+    void limitsEveryApiOnItsOwn() {
+        CodeAuth.InitializeOptions options = options();
+        options.rate_limits = Map.of("/signin/email", 1.0);
+        start(options);
+        assertEquals("no_error", CodeAuth.SignInEmail("a@b.c").error);
+        assertEquals("rate_limit_reached", CodeAuth.SignInEmail("a@b.c").error);
+        for (int i = 0; i < 10; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+    }
+
+    @Test
+    void rejectsCallsOverThePoolSize() {
+        CodeAuth.InitializeOptions options = options();
+        options.pool_size = 1;
+        options.concurrency_queue_timeout_ms = 0;
+        start(options);
+        transport.hold = true;
+        CompletableFuture<CodeAuth.SessionInfoResult> first = CodeAuth.SessionInfoAsync("token1");
+        assertEquals("overloaded", CodeAuth.SessionInfo("token2").error);
+        assertEquals(1, transport.held.size());
+
+        // the slot is given back with the answer
+        transport.answer(0);
+        assertEquals("no_error", first.join().error);
+        transport.hold = false;
+        assertEquals("no_error", CodeAuth.SessionInfo("token3").error);
+    }
+
+    @Test
+    void queuesCallsForAFreeSlot() {
+        CodeAuth.InitializeOptions options = options();
+        options.pool_size = 1;
+        options.concurrency_queue_timeout_ms = 5000;
+        start(options);
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        transport.hold = true;
+        CompletableFuture<CodeAuth.SessionInfoResult> first = CodeAuth.SessionInfoAsync("token1");
+        CompletableFuture<CodeAuth.SessionInfoResult> second = CodeAuth.SessionInfoAsync("token2");
+        assertEquals(1, transport.held.size());
+        assertEquals(1, CodeAuth.GetMetrics().concurrency_in_flight);
+
+        transport.answer(0);
+        assertEquals("no_error", first.join().error);
+        assertEquals(2, transport.held.size());
+        transport.answer(1);
+        assertEquals("no_error", second.join().error);
+        assertEquals(1, CodeAuth.GetMetrics().concurrency_queued_calls - before.concurrency_queued_calls);
+        assertEquals(0, CodeAuth.GetMetrics().concurrency_in_flight);
+    }
+
+    @Test
+    void failsQueuedCallsAfterTheQueueTimeout() {
+        CodeAuth.InitializeOptions options = options();
+        options.pool_size = 1;
+        options.concurrency_queue_timeout_ms = 50;
+        start(options);
+        transport.hold = true;
+        CodeAuth.SessionInfoAsync("token1");
+        assertEquals("overloaded", CodeAuth.SessionInfo("token2").error);
+        assertEquals(1, transport.held.size());
+    }
+
+    @Test
+    void shedsSignInBeforeSessionValidation() {
+        CodeAuth.InitializeOptions options = options();
+        options.pool_size = 1;
+        options.concurrency_max_queue = 1;
+        options.concurrency_queue_timeout_ms = 5000;
+        start(options);
+        transport.hold = true;
+        CompletableFuture<CodeAuth.SessionInfoResult> first = CodeAuth.SessionInfoAsync("token1");
+        CompletableFuture<CodeAuth.SignInEmailResult> signIn = CodeAuth.SignInEmailAsync("a@b.c");
+        // the queue is full: the session call takes the sign in's place
+        CompletableFuture<CodeAuth.SessionInfoResult> session = CodeAuth.SessionInfoAsync("token2");
+        assertEquals("overloaded", signIn.join().error);
+
+        transport.answer(0);
+        assertEquals("no_error", first.join().error);
+        transport.answer(1);
+        assertEquals("no_error", session.join().error);
+    }
+
+    @Test
+    void isolatesApiGroupsInBulkheads() {
+        CodeAuth.InitializeOptions options = options();
+        options.bulkheads = true;
+        options.signin_max_concurrency = 1;
+        options.concurrency_queue_timeout_ms = 0;
+        start(options);
+        transport.hold = true;
+        CompletableFuture<CodeAuth.SignInEmailResult> signIn = CodeAuth.SignInEmailAsync("a@b.c");
+        assertEquals("overloaded", CodeAuth.SignInEmail("d@e.f").error);
+
+        // a full sign in bulkhead leaves session validation alone
+        CompletableFuture<CodeAuth.SessionInfoResult> session = CodeAuth.SessionInfoAsync("token");
+        assertEquals(2, transport.held.size());
+        assertFalse(session.isDone());
+        transport.answer(1);
+        assertEquals("no_error", session.join().error);
+        transport.answer(0);
+        assertEquals("no_error", signIn.join().error);
+    }
+
+    private CodeAuth.InitializeOptions options() {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        return options;
+    }
+
+    private static void start(CodeAuth.InitializeOptions options) {
+        CodeAuth.Initialize("https://example.com", "project", false, 30, options);
+    }
+}
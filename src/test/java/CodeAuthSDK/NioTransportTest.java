@@ -0,0 +1,296 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * NioTransport's own http/1.1 and tls: pipelining, chunked bodies, broken connections and limits, against a scripted
+ * socket server, and the whole api flow against the emulator
+ */
+class NioTransportTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final byte[] BODY = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void stop() throws Exception {
+        CodeAuth.Shutdown();
+        for (AutoCloseable resource : resources) resource.close();
+    }
+
+    @Test
+    void pipelinesReadOnlyCallsAndCompletesThemInOrder() throws Exception {
+        // every request is read before the first answer: the client must have written them back to back
+        ScriptedServer server = server(connection -> {
+            for (int i = 0; i < 3; i++) connection.readRequest();
+            connection.write(ScriptedServer.ok("\"1\"") + ScriptedServer.ok("\"2\"") + ScriptedServer.ok("\"3\""));
+            connection.awaitClose();
+        });
+        CodeAuth.NioTransport transport = transport(options());
+        List<CompletableFuture<CodeAuth.TransportResponse>> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) calls.add(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS));
+
+        for (int i = 0; i < 3; i++) assertEquals("\"" + (i + 1) + "\"", body(calls.get(i)));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void readsChunkedBodies() throws Exception {
+        ScriptedServer server = server(connection -> {
+            connection.readRequest();
+            // the chunks arrive in pieces, split inside a chunk and inside a size line
+            connection.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhel");
+            Thread.sleep(50);
+            connection.write("lo\r\na\r");
+            Thread.sleep(50);
+            connection.write("\n world, ok\r\n0\r\n\r\n");
+            // the connection stays usable after the last chunk
+            connection.readRequest();
+            connection.write(ScriptedServer.ok("next"));
+            connection.awaitClose();
+        });
+        CodeAuth.NioTransport transport = transport(options());
+        assertEquals("hello world, ok", body(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)));
+        assertEquals("next", body(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void failsThePipelineBehindAConnectionTheServerClosed() throws Exception {
+        ScriptedServer server = server(connection -> {
+            if (connection.index == 0) {
+                for (int i = 0; i < 3; i++) connection.readRequest();
+                connection.write(ScriptedServer.ok("first"));
+                connection.close();
+                return;
+            }
+            connection.readRequest();
+            connection.write(ScriptedServer.ok("again"));
+            connection.awaitClose();
+        });
+        CodeAuth.NioTransport transport = transport(options());
+        List<CompletableFuture<CodeAuth.TransportResponse>> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) calls.add(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS));
+
+        assertEquals("first", body(calls.get(0)));
+        // written, maybe run by the server: they fail instead of being sent again
+        for (int i = 1; i < 3; i++) assertInstanceOf(IOException.class, failure(calls.get(i)));
+        // the next call opens a new connection
+        assertEquals("again", body(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)));
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    void failsOnlyTheCallPastItsDeadline() throws Exception {
+        ScriptedServer server = server(connection -> {
+            connection.readRequest();
+            connection.readRequest();
+            Thread.sleep(600);
+            connection.write(ScriptedServer.ok("\"late\"") + ScriptedServer.ok("\"on time\""));
+            connection.readRequest();
+            connection.write(ScriptedServer.ok("\"next\""));
+            connection.awaitClose();
+        });
+        CodeAuth.NioTransport transport = transport(options());
+        CompletableFuture<CodeAuth.TransportResponse> late = transport.SendAsync(server.endpoint(), "/session/info", BODY, TimeUnit.MILLISECONDS.toNanos(200));
+        CompletableFuture<CodeAuth.TransportResponse> onTime = transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS);
+
+        assertInstanceOf(HttpTimeoutException.class, failure(late));
+        // the call pipelined behind it still gets its answer, on the same connection
+        assertEquals("\"on time\"", body(onTime));
+        assertEquals("\"next\"", body(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void movesWaitingCallsOffAConnectionThatStoppedAnswering() throws Exception {
+        ScriptedServer server = server(connection -> {
+            connection.readRequest();
+            if (connection.index > 0) connection.write(ScriptedServer.ok("\"answered\""));
+            connection.awaitClose();
+        });
+        CodeAuth.NioTransport transport = transport(options());
+        assertInstanceOf(HttpTimeoutException.class, failure(transport.SendAsync(server.endpoint(), "/session/info", BODY, TimeUnit.MILLISECONDS.toNanos(200))));
+
+        // nothing is pipelined behind the unanswered call: the next one goes out on a new connection
+        assertEquals("\"answered\"", body(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)));
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    void neverPipelinesCallsWithSideEffects() throws Exception {
+        AtomicBoolean pipelined = new AtomicBoolean();
+        List<String> paths = new CopyOnWriteArrayList<>();
+        ScriptedServer server = server(connection -> {
+            String path;
+            while ((path = connection.readRequest()) != null) {
+                paths.add(path);
+                if (connection.sendsMoreWithin(200)) pipelined.set(true);
+                connection.write(ScriptedServer.ok("{}"));
+            }
+        });
+        CodeAuth.NioTransport transport = transport(options());
+        // queued together before the connection opens: each one goes out only once the previous one was answered
+        List<CompletableFuture<CodeAuth.TransportResponse>> calls = new ArrayList<>();
+        calls.add(transport.SendAsync(server.endpoint(), "/signin/email", BODY, TIMEOUT_NANOS));
+        calls.add(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS));
+        calls.add(transport.SendAsync(server.endpoint(), "/session/invalidate", BODY, TIMEOUT_NANOS));
+        for (CompletableFuture<CodeAuth.TransportResponse> call : calls) body(call);
+
+        assertEquals(List.of("/signin/email", "/session/info", "/session/invalidate"), paths);
+        assertFalse(pipelined.get());
+    }
+
+    @Test
+    void rejectsBodiesOverMaxResponseBytes() throws Exception {
+        ScriptedServer server = server(connection -> {
+            connection.readRequest();
+            String large = "x".repeat(100);
+            switch (connection.index) {
+                // told up front
+                case 0 -> connection.write(ScriptedServer.ok(large));
+                // only found out while reading the chunks
+                case 1 -> connection.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n10\r\n" + large.substring(0, 16) + "\r\n10\r\n" + large.substring(0, 16) + "\r\n0\r\n\r\n");
+                default -> connection.write(ScriptedServer.ok("small"));
+            }
+            connection.awaitClose();
+        });
+        CodeAuth.InitializeOptions options = options();
+        options.max_response_bytes = 20;
+        CodeAuth.NioTransport transport = transport(options);
+
+        assertTrue(failure(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)).getMessage().contains("too large"));
+        assertTrue(failure(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)).getMessage().contains("too large"));
+        assertEquals("small", body(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)));
+    }
+
+    @Test
+    void failsConnectionsNotOpenedWithinTheConnectTimeout() throws Exception {
+        // accepts tcp but never answers the tls handshake
+        ScriptedServer server = server(ScriptedServer.Connection::awaitClose);
+        CodeAuth.InitializeOptions options = options();
+        options.connect_timeout_ms = 200;
+        CodeAuth.NioTransport transport = transport(options);
+
+        long start = System.nanoTime();
+        Throwable failure = failure(transport.SendAsync(server.endpoint().replace("http://127.0.0.1", "https://localhost"), "/session/info", BODY, TIMEOUT_NANOS));
+        assertInstanceOf(ConnectException.class, failure);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "failed after " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    @Test
+    void exchangesOverTls() throws Exception {
+        Path keyStore = Files.createTempDirectory("codeauth-tls").resolve("localhost.p12");
+        char[] password = "password".toCharArray();
+        Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+            "-genkeypair", "-alias", "localhost", "-keyalg", "EC", "-groupname", "secp256r1", "-dname", "CN=localhost",
+            "-ext", "SAN=dns:localhost", "-validity", "1", "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+            "-storepass", "password", "-keypass", "password").redirectErrorStream(true).start();
+        keytool.getInputStream().readAllBytes();
+        assertEquals(0, keytool.waitFor());
+        KeyStore keys = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keyStore.toFile())) {
+            keys.load(in, password);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keys, password);
+        SSLContext serverTls = SSLContext.getInstance("TLS");
+        serverTls.init(keyManagers.getKeyManagers(), null, null);
+        // the client trusts the server's self signed certificate
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keys);
+        SSLContext clientTls = SSLContext.getInstance("TLS");
+        clientTls.init(null, trustManagers.getTrustManagers(), null);
+
+        ScriptedServer server = new ScriptedServer(serverTls, connection -> {
+            String path;
+            while ((path = connection.readRequest()) != null) connection.write(ScriptedServer.ok("\"" + path + "\""));
+        });
+        resources.add(server);
+        CodeAuth.NioTransport transport = new CodeAuth.NioTransport(options(), clientTls);
+        resources.add(transport::Close);
+
+        assertEquals("\"/session/info\"", body(transport.SendAsync(server.endpoint(), "/session/info", BODY, TIMEOUT_NANOS)));
+        assertEquals("\"/signin/email\"", body(transport.SendAsync(server.endpoint(), "/signin/email", BODY, TIMEOUT_NANOS)));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void runsTheApiAgainstTheEmulator() throws Exception {
+        Emulator emulator = Emulator.Start("project", 0, new EmulatorOptions());
+        resources.add(emulator::Stop);
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.nio_connections = 2;
+        options.transport = new CodeAuth.NioTransport(options);
+        CodeAuth.Initialize(emulator.Endpoint(), "project", false, 30, options);
+
+        assertEquals("no_error", CodeAuth.SignInEmail("user@example.com").error);
+        CodeAuth.SignInEmailVerifyResult session = CodeAuth.SignInEmailVerify("user@example.com", emulator.GetCode("user@example.com"));
+        assertEquals("no_error", session.error);
+
+        // many reads at once, pipelined on the two connections
+        List<CompletableFuture<CodeAuth.SessionInfoResult>> infos = new ArrayList<>();
+        for (int i = 0; i < 100; i++) infos.add(CodeAuth.SessionInfoAsync(session.session_token));
+        for (CompletableFuture<CodeAuth.SessionInfoResult> info : infos) {
+            assertEquals("no_error", info.get(5, TimeUnit.SECONDS).error);
+            assertEquals("user@example.com", info.get().email);
+        }
+        assertEquals("no_error", CodeAuth.SessionInvalidate(session.session_token, "only_this").error);
+        assertEquals("bad_session_token", CodeAuth.SessionInfo(session.session_token).error);
+    }
+
+    // a single connection, so every call shares it
+    private static CodeAuth.InitializeOptions options() {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.nio_connections = 1;
+        return options;
+    }
+
+    private ScriptedServer server(ScriptedServer.Script script) throws IOException {
+        ScriptedServer server = new ScriptedServer(script);
+        resources.add(server);
+        return server;
+    }
+
+    private CodeAuth.NioTransport transport(CodeAuth.InitializeOptions options) throws IOException {
+        CodeAuth.NioTransport transport = new CodeAuth.NioTransport(options);
+        resources.add(transport::Close);
+        return transport;
+    }
+
+    private static String body(CompletableFuture<CodeAuth.TransportResponse> call) throws Exception {
+        CodeAuth.TransportResponse response = call.get(5, TimeUnit.SECONDS);
+        assertEquals(200, response.status);
+        return new String(response.body, StandardCharsets.UTF_8);
+    }
+
+    private static Throwable failure(CompletableFuture<CodeAuth.TransportResponse> call) {
+        return assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS)).getCause();
+    }
+}
@@ -0,0 +1,99 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Retries of failed calls, bounded by retry_max_attempts and by the retry budget so an outage is not multiplied
+ */
+class RetryBudgetTest {
+    // the budget's reserve: retries allowed before any call has earned one
+    private static final int RESERVE = 10;
+
+    // attempts that reached the transport
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    @Test
+    void retriesUpToMaxAttempts() {
+        start(3, 10, 500);
+        assertEquals("connection_error", CodeAuth.SessionInfo("token").error);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void doesNotRetryRejectedCalls() {
+        start(3, 10, 400);
+        CodeAuth.SessionInfo("token");
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void stopsRetryingOnceTheBudgetIsSpent() {
+        start(3, 0, 500);
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        for (int i = 0; i < 20; i++) CodeAuth.SessionInfo("token" + i);
+
+        CodeAuth.Metrics after = CodeAuth.GetMetrics();
+        assertEquals(RESERVE, after.retries - before.retries);
+        // the first 5 calls spend the reserve on 2 retries each, the other 15 give up at their first denied retry
+        assertEquals(15, after.retries_denied_by_budget - before.retries_denied_by_budget);
+        assertEquals(20 + RESERVE, attempts.get());
+    }
+
+    @Test
+    void earnsRetriesBackFromCalls() {
+        start(2, 50, 500);
+        // spends the reserve
+        for (int i = 0; i < 30; i++) CodeAuth.SessionInfo("token" + i);
+
+        // every call earns half a retry, so from then on every other call retries
+        CodeAuth.Metrics before = CodeAuth.GetMetrics();
+        for (int i = 30; i < 50; i++) CodeAuth.SessionInfo("token" + i);
+        CodeAuth.Metrics after = CodeAuth.GetMetrics();
+        assertEquals(10, after.retries - before.retries);
+        assertEquals(10, after.retries_denied_by_budget - before.retries_denied_by_budget);
+    }
+
+    @Test
+    void endsARetryingCallOnShutdown() {
+        HeldTransport transport = new HeldTransport(true);
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 3;
+        options.retry_base_delay_ms = 1;
+        options.retry_max_delay_ms = 1;
+        CodeAuth.Initialize("https://example.com", "project", false, 30, options);
+        CompletableFuture<CodeAuth.SessionInfoResult> result = CodeAuth.SessionInfoAsync("token");
+
+        // closing the transport fails the attempt, and the retry it asks for is never sent
+        CodeAuth.Shutdown();
+        assertTrue(result.isDone());
+        assertEquals("connection_error", result.join().error);
+        assertEquals(1, transport.attempts.get());
+    }
+
+    private void start(int maxAttempts, double budgetPercent, int status) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+            attempts.incrementAndGet();
+            return new CodeAuth.TransportResponse(status, "{\"error\":\"internal_error\"}".getBytes(StandardCharsets.UTF_8), null);
+        });
+        options.retry_max_attempts = maxAttempts;
+        options.retry_base_delay_ms = 1;
+        options.retry_max_delay_ms = 1;
+        options.retry_budget_percent = budgetPercent;
+        options.circuit_breaker = false;
+        CodeAuth.Initialize("https://example.com", "project", false, 30, options);
+    }
+}
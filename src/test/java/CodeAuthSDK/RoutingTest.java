@@ -0,0 +1,165 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * With extra_endpoints, calls go to the endpoint with the best smoothed response time and error rate, an endpoint that
+ * recovered gets its share back gradually, and a call fails over to another endpoint only when it was never sent
+ */
+class RoutingTest {
+    private static final String A = "https://a.example.com";
+    private static final String B = "https://b.example.com";
+
+    // what each endpoint does with a call: after 'delay' ms, answers or throws 'failure'
+    private final Map<String, Integer> delays = new ConcurrentHashMap<>();
+    private final Map<String, Exception> failures = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> sent = new ConcurrentHashMap<>();
+
+    private final CodeAuth.InMemoryTransport transport = new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+        sent.computeIfAbsent(endpoint, e -> new AtomicInteger()).incrementAndGet();
+        Thread.sleep(delays.getOrDefault(endpoint, 0));
+        Exception failure = failures.get(endpoint);
+        if (failure != null) throw failure;
+        return new CodeAuth.TransportResponse(200, "{\"email\":\"a@b.c\"}".getBytes(StandardCharsets.UTF_8), null);
+    });
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    private static CodeAuth.InitializeOptions options() {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.retry_max_attempts = 1;
+        options.circuit_breaker = false;
+        options.extra_endpoints = List.of(B);
+        return options;
+    }
+
+    private void start(CodeAuth.InitializeOptions options) {
+        options.transport = transport;
+        CodeAuth.Initialize(A, "project", false, 30, options);
+    }
+
+    private int sent(String endpoint) {
+        AtomicInteger count = sent.get(endpoint);
+        return count != null ? count.get() : 0;
+    }
+
+    @Test
+    void sendsCallsToTheFasterEndpoint() {
+        delays.put(A, 30);
+        start(options());
+        for (int i = 0; i < 20; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+        // each endpoint is tried once, then the faster one gets every call
+        assertEquals(1, sent(A));
+        assertEquals(19, sent(B));
+
+        // until it gets slower than the other one
+        delays.put(A, 0);
+        delays.put(B, 60);
+        for (int i = 0; i < 20; i++) CodeAuth.SessionInfo("token" + i);
+        assertTrue(sent(A) > 10, "A got " + sent(A) + " calls");
+    }
+
+    @Test
+    void movesCallsAwayFromAFailingEndpoint() {
+        // as fast as each other, so only the errors make a difference
+        delays.put(A, 5);
+        delays.put(B, 5);
+        start(options());
+        // A is tried first, and fails after sending: the call is not repeated
+        failures.put(A, new IOException("connection reset"));
+        assertEquals("connection_error", CodeAuth.SessionInfo("token").error);
+        assertEquals(0, sent(B));
+
+        failures.remove(A);
+        for (int i = 0; i < 10; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+        assertEquals(1, sent(A));
+        assertEquals(10, sent(B));
+    }
+
+    @Test
+    void failsOverWhenTheEndpointCannotBeReached() {
+        start(options());
+        long before = CodeAuth.GetMetrics().endpoint_failovers;
+        failures.put(A, new ConnectException("connection refused"));
+        assertEquals("no_error", CodeAuth.SessionInfo("token").error);
+        assertEquals(1, sent(A));
+        assertEquals(1, sent(B));
+        assertEquals(1, CodeAuth.GetMetrics().endpoint_failovers - before);
+    }
+
+    @Test
+    void failsOverCallsWithSideEffectsOnlyWhenNeverSent() {
+        start(options());
+        // refused: the server never saw it, so even a sign in is safe to send to the other endpoint
+        failures.put(A, new ConnectException("connection refused"));
+        assertEquals("no_error", CodeAuth.SignInEmail("a@b.c").error);
+        assertEquals(1, sent(B));
+
+        // reset after sending: the server may have run it
+        failures.remove(A);
+        failures.put(B, new IOException("connection reset"));
+        failures.put(A, new IOException("connection reset"));
+        long before = CodeAuth.GetMetrics().endpoint_failovers;
+        assertEquals("connection_error", CodeAuth.SignInEmail("a@b.c").error);
+        assertEquals(3, sent(A) + sent(B));
+        assertEquals(0, CodeAuth.GetMetrics().endpoint_failovers - before);
+    }
+
+    @Test
+    void failsWhenNoEndpointCanBeReached() {
+        start(options());
+        failures.put(A, new ConnectException("connection refused"));
+        failures.put(B, new ConnectException("connection refused"));
+        assertEquals("connection_error", CodeAuth.SessionInfo("token").error);
+        // each endpoint once
+        assertEquals(1, sent(A));
+        assertEquals(1, sent(B));
+    }
+
+    @Test
+    void givesARecoveredEndpointItsShareBackSlowly() throws Exception {
+        // B is slower, so A gets every call once healthy
+        delays.put(B, 20);
+        CodeAuth.InitializeOptions options = options();
+        options.circuit_breaker = true;
+        options.circuit_window_size = 2;
+        options.circuit_min_calls = 2;
+        options.circuit_open_duration_ms = 100;
+        options.circuit_half_open_calls = 1;
+        options.endpoint_slow_start_ms = 1000;
+        start(options);
+
+        // A's breaker opens, its calls fail over to B
+        failures.put(A, new ConnectException("connection refused"));
+        for (int i = 0; i < 2; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+        assertEquals(2, sent(A));
+        failures.remove(A);
+        Thread.sleep(150);
+        // the trial call goes to A and closes its breaker
+        assertEquals("no_error", CodeAuth.SessionInfo("trial").error);
+        assertEquals(3, sent(A));
+
+        // right after, A only gets a small share, growing over 'endpoint_slow_start_ms'
+        for (int i = 0; i < 10; i++) CodeAuth.SessionInfo("token" + i);
+        assertTrue(sent(A) - 3 < 5, "A got " + (sent(A) - 3) + " of 10 calls");
+
+        Thread.sleep(1000);
+        int before = sent(A);
+        for (int i = 0; i < 10; i++) CodeAuth.SessionInfo("token" + i);
+        assertEquals(10, sent(A) - before);
+    }
+}
@@ -0,0 +1,148 @@
+package CodeAuthSDK;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+
+/**
+ * A tcp server that answers every connection the way the test's script says, byte for byte. Tests a transport against
+ * responses a real http server would not send on cue: pipelined, chunked, too large, cut short
+ */
+final class ScriptedServer implements AutoCloseable {
+    interface Script {
+        void run(Connection connection) throws Exception;
+    }
+
+    private final ServerSocket server;
+    private final boolean tls;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    // connections accepted so far
+    final AtomicInteger connections = new AtomicInteger();
+
+    ScriptedServer(Script script) throws IOException {
+        this(null, script);
+    }
+
+    // with a tls context, the server speaks https with its key
+    ScriptedServer(SSLContext tls, Script script) throws IOException {
+        this.tls = tls != null;
+        this.server = tls != null ? tls.getServerSocketFactory().createServerSocket(0) : new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    sockets.add(socket);
+                    Connection connection = new Connection(socket, connections.getAndIncrement());
+                    Thread handler = new Thread(() -> {
+                        try {
+                            script.run(connection);
+                        } catch (Exception e) {
+                            // the client went away, or the script ended the connection on purpose
+                        }
+                    }, "scripted-server-connection");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }, "scripted-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String endpoint() {
+        // https checks the certificate's host name, issued for localhost
+        return (tls ? "https://localhost:" : "http://127.0.0.1:") + server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket socket : sockets) socket.close();
+    }
+
+    // a 200 response with a Content-Length
+    static String ok(String body) {
+        return "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body;
+    }
+
+    static final class Connection {
+        final Socket socket;
+        // the number of the connection, in the order they were accepted
+        final int index;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection(Socket socket, int index) throws IOException {
+            this.socket = socket;
+            this.index = index;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+        }
+
+        // reads the next request and returns its path, or null when the client closed the connection
+        String readRequest() throws IOException {
+            String requestLine = readLine();
+            if (requestLine == null) return null;
+            int contentLength = 0;
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+            if (in.readNBytes(contentLength).length < contentLength) return null;
+            return requestLine.split(" ")[1];
+        }
+
+        // whether the client sends anything more within 'millis'
+        boolean sendsMoreWithin(int millis) throws IOException {
+            socket.setSoTimeout(millis);
+            in.mark(1);
+            try {
+                return in.read() >= 0;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } finally {
+                socket.setSoTimeout(0);
+                in.reset();
+            }
+        }
+
+        void write(String raw) throws IOException {
+            out.write(raw.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        // reads until the client closes the connection
+        void awaitClose() throws IOException {
+            while (in.read() >= 0) {
+                // drop
+            }
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') return line.toString(StandardCharsets.ISO_8859_1).stripTrailing();
+                line.write(b);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Session expirations are measured against the server's clock, learned from the 'Date' header, and a cached session
+ * is never kept past its expiration, however far away that is
+ */
+class ServerClockTest {
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // how far the server's clock is ahead of ours, and the 'Date' it sends (null for none, otherwise from the offset)
+    private final AtomicLong serverAheadMillis = new AtomicLong();
+    private final AtomicReference<String> date = new AtomicReference<>();
+    // the session's 'expiration', in unix seconds
+    private final AtomicLong expiration = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void start() {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+            calls.incrementAndGet();
+            String header = date.get() != null ? date.get() : DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(System.currentTimeMillis() + serverAheadMillis.get()).atZone(ZoneOffset.UTC));
+            byte[] session = ("{\"email\":\"a@b.c\",\"expiration\":" + expiration.get() + ",\"refresh_left\":3}").getBytes(StandardCharsets.UTF_8);
+            return new CodeAuth.TransportResponse(200, session, Map.of("Date", List.of(header)));
+        });
+        options.retry_max_attempts = 1;
+        options.circuit_breaker = false;
+        CodeAuth.Initialize("https://example.com", "project", true, 30, options);
+    }
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    // an expiration 'millis' from now by our clock
+    private static long inLocal(long millis) {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() + millis);
+    }
+
+    // whether the session was cached: a second lookup is served without a call
+    private boolean cached(String token) {
+        int before = calls.get();
+        assertEquals("no_error", CodeAuth.SessionInfo(token).error);
+        assertEquals("no_error", CodeAuth.SessionInfo(token).error);
+        return calls.get() - before == 1;
+    }
+
+    @Test
+    void learnsTheOffsetFromTheDateHeader() {
+        serverAheadMillis.set(HOUR_MILLIS);
+        expiration.set(inLocal(2 * HOUR_MILLIS));
+        CodeAuth.SessionInfo("token");
+        long offset = CodeAuth.GetMetrics().server_clock_offset_ms;
+        assertTrue(Math.abs(offset - HOUR_MILLIS) <= 1000, "offset " + offset + "ms");
+    }
+
+    @Test
+    void measuresExpirationsByTheServersClock() {
+        // in half an hour by our clock, half an hour ago by the server's
+        serverAheadMillis.set(HOUR_MILLIS);
+        expiration.set(inLocal(HOUR_MILLIS / 2));
+        assertFalse(cached("ahead"));
+
+        CodeAuth.Shutdown();
+        start();
+        // half an hour ago by our clock, in half an hour by the server's
+        serverAheadMillis.set(-HOUR_MILLIS);
+        expiration.set(inLocal(-HOUR_MILLIS / 2));
+        assertTrue(cached("behind"));
+    }
+
+    @Test
+    void doesNotCacheAnAlreadyExpiredSession() {
+        expiration.set(inLocal(-10_000));
+        assertFalse(cached("expired"));
+        // within the safety margin of the clock estimate
+        expiration.set(inLocal(500));
+        assertFalse(cached("expiring"));
+        expiration.set(inLocal(60_000));
+        assertTrue(cached("valid"));
+    }
+
+    @Test
+    void capsAFarFutureExpiration() {
+        // year 3000, and the largest value the field can hold: neither overflows into the past
+        expiration.set(32503680000L);
+        assertTrue(cached("year3000"));
+        expiration.set(Long.MAX_VALUE);
+        assertTrue(cached("max"));
+    }
+
+    @Test
+    void ignoresAnUnreadableDateHeader() {
+        date.set("yesterday");
+        expiration.set(inLocal(60_000));
+        assertTrue(cached("token"));
+        assertEquals(0, CodeAuth.GetMetrics().server_clock_offset_ms);
+    }
+
+    @Test
+    void forgetsTheOffsetOnInitialize() {
+        serverAheadMillis.set(HOUR_MILLIS);
+        expiration.set(inLocal(2 * HOUR_MILLIS));
+        CodeAuth.SessionInfo("token");
+        CodeAuth.Shutdown();
+        start();
+        assertEquals(0, CodeAuth.GetMetrics().server_clock_offset_ms);
+
+        // the next server's 'Date' is taken as is, not smoothed into the old offset
+        serverAheadMillis.set(-HOUR_MILLIS);
+        CodeAuth.SessionInfo("token");
+        long offset = CodeAuth.GetMetrics().server_clock_offset_ms;
+        assertTrue(Math.abs(offset + HOUR_MILLIS) <= 1000, "offset " + offset + "ms");
+    }
+}
@@ -0,0 +1,84 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The session cache: kept within cache_max_entries by W-TinyLFU, and emptied by its expiry wheel once entries can no
+ * longer be served
+ */
+class SessionCacheTest {
+    // '/session/info' calls that reached the transport
+    private final AtomicInteger upstream = new AtomicInteger();
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    @Test
+    void staysWithinMaxEntries() {
+        start(30, 100);
+        long evictions = CodeAuth.GetMetrics().session_cache_evictions;
+        for (int i = 0; i < 1000; i++) assertEquals("no_error", CodeAuth.SessionInfo("token" + i).error);
+
+        CodeAuth.Metrics metrics = CodeAuth.GetMetrics();
+        assertTrue(metrics.session_cache_entries <= 100, "entries " + metrics.session_cache_entries);
+        assertEquals(1000 - metrics.session_cache_entries, metrics.session_cache_evictions - evictions);
+    }
+
+    @Test
+    void keepsFrequentSessionsThroughAScan() {
+        start(30, 100);
+        for (int i = 0; i < 20; i++) CodeAuth.SessionInfo("hot");
+        assertEquals(1, upstream.get());
+
+        // tokens asked for once each, ten times more than the cache holds
+        for (int i = 0; i < 1000; i++) CodeAuth.SessionInfo("cold" + i);
+        assertEquals(1001, upstream.get());
+
+        CodeAuth.SessionInfo("hot");
+        assertEquals(1001, upstream.get(), "the frequent session was evicted by one time ones");
+    }
+
+    @Test
+    void servesCachedSessionsUntilCacheDuration() throws Exception {
+        start(1, 0);
+        CodeAuth.SessionInfo("token");
+        CodeAuth.SessionInfo("token");
+        assertEquals(1, upstream.get());
+
+        Thread.sleep(1100);
+        CodeAuth.SessionInfo("token");
+        assertEquals(2, upstream.get());
+    }
+
+    @Test
+    void dropsEntriesThatCanNoLongerBeServed() throws Exception {
+        start(1, 0);
+        for (int i = 0; i < 50; i++) CodeAuth.SessionInfo("token" + i);
+        assertEquals(50, CodeAuth.GetMetrics().session_cache_entries);
+
+        // fresh for 1 second (never stale: their expiration is unknown), then swept at the wheel's next one second
+        // tick by the maintenance an idle cache runs every second
+        long deadline = System.nanoTime() + 6_000_000_000L;
+        while (CodeAuth.GetMetrics().session_cache_entries > 0 && System.nanoTime() < deadline) Thread.sleep(100);
+        assertEquals(0, CodeAuth.GetMetrics().session_cache_entries);
+        assertEquals(0, CodeAuth.GetMetrics().session_cache_bytes);
+    }
+
+    private void start(int cacheDuration, int maxEntries) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+            upstream.incrementAndGet();
+            return new CodeAuth.TransportResponse(200, "{\"email\":\"a@b.c\"}".getBytes(StandardCharsets.UTF_8), null);
+        });
+        options.cache_max_entries = maxEntries;
+        CodeAuth.Initialize("https://example.com", "project", true, cacheDuration, options);
+    }
+}
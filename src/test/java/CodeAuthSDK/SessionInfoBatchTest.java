@@ -0,0 +1,117 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * SessionInfoBatch answers cached tokens without a call, looks each distinct token up once, and keeps at most
+ * 'batch_concurrency' lookups in flight
+ */
+class SessionInfoBatchTest {
+    private final HeldTransport transport = new HeldTransport(false);
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    private void start(int batchConcurrency) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.retry_max_attempts = 1;
+        options.circuit_breaker = false;
+        options.batch_concurrency = batchConcurrency;
+        CodeAuth.Initialize("https://example.com", "project", true, 30, options);
+    }
+
+    @Test
+    void looksUpEachDistinctTokenOnce() {
+        start(8);
+        Map<String, CodeAuth.SessionInfoResult> results = CodeAuth.SessionInfoBatch(Arrays.asList("a", "b", "a", null, "c", "b"));
+        // in the order they first appeared, without the duplicates and nulls
+        assertEquals(List.of("a", "b", "c"), List.copyOf(results.keySet()));
+        for (CodeAuth.SessionInfoResult result : results.values()) assertEquals("a@b.c", result.email);
+        assertEquals(3, transport.attempts.get());
+    }
+
+    @Test
+    void answersCachedTokensWithoutACall() {
+        start(8);
+        CodeAuth.SessionInfo("a");
+        CodeAuth.SessionInfo("b");
+        assertEquals(2, transport.attempts.get());
+
+        transport.hold = true;
+        CompletableFuture<Map<String, CodeAuth.SessionInfoResult>> batch = CodeAuth.SessionInfoBatchAsync(List.of("a", "b"));
+        // every token cached: done right away
+        assertTrue(batch.isDone());
+        assertEquals("a@b.c", batch.join().get("a").email);
+        assertEquals(2, transport.attempts.get());
+
+        batch = CodeAuth.SessionInfoBatchAsync(List.of("a", "c", "b"));
+        // only the miss is looked up
+        assertEquals(3, transport.attempts.get());
+        transport.answer(0, "{\"email\":\"c@d.e\"}");
+        Map<String, CodeAuth.SessionInfoResult> results = batch.join();
+        assertEquals(List.of("a", "c", "b"), List.copyOf(results.keySet()));
+        assertEquals("c@d.e", results.get("c").email);
+    }
+
+    @Test
+    void keepsAtMostBatchConcurrencyLookupsInFlight() {
+        start(3);
+        transport.hold = true;
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 10; i++) tokens.add("token" + i);
+        CompletableFuture<Map<String, CodeAuth.SessionInfoResult>> batch = CodeAuth.SessionInfoBatchAsync(tokens);
+        assertEquals(3, transport.held.size());
+
+        // each answer lets the next lookup start
+        for (int i = 0; i < 10; i++) {
+            transport.answer(i);
+            assertEquals(Math.min(10, i + 4), transport.held.size());
+        }
+        assertEquals(10, batch.join().size());
+        for (CodeAuth.SessionInfoResult result : batch.join().values()) assertEquals("no_error", result.error);
+    }
+
+    @Test
+    void joinsALookupAlreadyInFlight() {
+        start(8);
+        transport.hold = true;
+        CompletableFuture<CodeAuth.SessionInfoResult> single = CodeAuth.SessionInfoAsync("a");
+        CompletableFuture<Map<String, CodeAuth.SessionInfoResult>> batch = CodeAuth.SessionInfoBatchAsync(List.of("a", "b"));
+        assertEquals(2, transport.held.size());
+
+        transport.answer(0);
+        transport.answer(1);
+        assertEquals("no_error", single.join().error);
+        assertEquals("no_error", batch.join().get("a").error);
+    }
+
+    @Test
+    void cancellingTheBatchCancelsItsLookups() {
+        start(2);
+        transport.hold = true;
+        CompletableFuture<Map<String, CodeAuth.SessionInfoResult>> batch = CodeAuth.SessionInfoBatchAsync(List.of("a", "b", "c"));
+        assertEquals(2, transport.held.size());
+
+        batch.cancel(true);
+        assertTrue(transport.held.get(0).isCancelled());
+        assertTrue(transport.held.get(1).isCancelled());
+        // the rest is never started
+        assertEquals(2, transport.held.size());
+        // and a later lookup does not join a cancelled one
+        assertFalse(CodeAuth.SessionInfoAsync("a").isDone());
+        assertEquals(3, transport.held.size());
+    }
+}
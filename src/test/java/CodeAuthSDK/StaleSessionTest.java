@@ -0,0 +1,116 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Serving cached sessions stale when '/session/info' fails, and never once the server has rejected the token
+ */
+class StaleSessionTest {
+    private static final String TOKEN = "token";
+
+    // what the transport answers next: a status and body, or null to fail like a network error
+    private final AtomicReference<CodeAuth.TransportResponse> next = new AtomicReference<>();
+
+    @BeforeEach
+    void start() {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = new CodeAuth.InMemoryTransport((endpoint, path, body) -> {
+            CodeAuth.TransportResponse response = next.get();
+            if (response == null) throw new IOException("connection refused");
+            return response;
+        });
+        options.cache_max_stale = 60;
+        options.retry_max_attempts = 1;
+        options.circuit_breaker = false;
+        CodeAuth.Initialize("https://example.com", "project", true, 1, options);
+    }
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    @Test
+    void servesCachedSessionStaleWhenTheApiFails() throws Exception {
+        answerSession();
+        assertEquals("no_error", CodeAuth.SessionInfo(TOKEN).error);
+        waitOutCacheDuration();
+
+        next.set(null);
+        CodeAuth.SessionInfoResult result = CodeAuth.SessionInfo(TOKEN);
+        assertEquals("no_error", result.error);
+        assertTrue(result.stale);
+        assertEquals("a@b.c", result.email);
+    }
+
+    @Test
+    void neverServesRejectedSessionStale() throws Exception {
+        answerSession();
+        assertEquals("no_error", CodeAuth.SessionInfo(TOKEN).error);
+        waitOutCacheDuration();
+
+        answer(400, "{\"error\":\"bad_session_token\"}");
+        assertEquals("bad_session_token", CodeAuth.SessionInfo(TOKEN).error);
+
+        next.set(null);
+        CodeAuth.SessionInfoResult result = CodeAuth.SessionInfo(TOKEN);
+        assertEquals("connection_error", result.error);
+        assertFalse(result.stale);
+        assertEquals(null, result.email);
+    }
+
+    @Test
+    void keepsTheSessionThroughServerErrors() throws Exception {
+        answerSession();
+        assertEquals("no_error", CodeAuth.SessionInfo(TOKEN).error);
+        waitOutCacheDuration();
+
+        // an incident on the server says nothing about the token
+        answer(400, "{\"error\":\"internal_error\"}");
+        assertEquals("internal_error", CodeAuth.SessionInfo(TOKEN).error);
+
+        next.set(null);
+        CodeAuth.SessionInfoResult result = CodeAuth.SessionInfo(TOKEN);
+        assertEquals("no_error", result.error);
+        assertTrue(result.stale);
+        assertEquals("a@b.c", result.email);
+    }
+
+    @Test
+    void neverServesSessionStaleAfterARejectedRefresh() throws Exception {
+        answerSession();
+        assertEquals("no_error", CodeAuth.SessionInfo(TOKEN).error);
+
+        answer(400, "{\"error\":\"bad_session_token\"}");
+        assertEquals("bad_session_token", CodeAuth.SessionRefresh(TOKEN).error);
+        waitOutCacheDuration();
+
+        next.set(null);
+        assertEquals("connection_error", CodeAuth.SessionInfo(TOKEN).error);
+    }
+
+    // a session that expires in an hour: only sessions with a known expiration are served stale
+    private void answerSession() {
+        long expiration = System.currentTimeMillis() / 1000 + 3600;
+        answer(200, "{\"email\":\"a@b.c\",\"expiration\":" + expiration + ",\"refresh_left\":3}");
+    }
+
+    private void answer(int status, String body) {
+        next.set(new CodeAuth.TransportResponse(status, body.getBytes(StandardCharsets.UTF_8), Map.of()));
+    }
+
+    // the cache_duration of 1 second
+    private static void waitOutCacheDuration() throws InterruptedException {
+        Thread.sleep(1100);
+    }
+}
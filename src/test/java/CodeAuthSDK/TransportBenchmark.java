@@ -0,0 +1,83 @@
+package CodeAuthSDK;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * '/session/info' calls through NioTransport against HttpTransport (HTTP/1.1), to an Emulator over loopback http.
+ * The emulator's own cost is in both. Run with: mvn -Pbench test -Dbench=TransportBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// the emulator's jdk http server waits on delayed acks without nodelay
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class TransportBenchmark {
+    private static final String PROJECT_ID = "project";
+    private static final int BURST = 64;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Param({ "http", "nio" })
+    public String transport;
+
+    private Emulator emulator;
+    private CodeAuth.Transport client;
+    private String endpoint;
+    private byte[] body;
+
+    @Setup
+    public void setup() throws Exception {
+        emulator = Emulator.Start(PROJECT_ID, 0, new EmulatorOptions());
+        endpoint = emulator.Endpoint();
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.use_http2 = false;
+        client = transport.equals("nio") ? new CodeAuth.NioTransport(options) : new CodeAuth.HttpTransport(options);
+
+        String verify = "{\"project_id\":\"" + PROJECT_ID + "\",\"social_type\":\"google\",\"authorization_code\":\"" + emulator.CreateSocialCode("user@example.com") + "\"}";
+        CodeAuth.TransportResponse session = client.Send(endpoint, "/signin/socialverify", verify.getBytes(StandardCharsets.UTF_8), TIMEOUT_NANOS);
+        String token = EmulatorJson.read(session.body).get("session_token");
+        body = ("{\"project_id\":\"" + PROJECT_ID + "\",\"session_token\":\"" + token + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.Close();
+        emulator.Stop();
+    }
+
+    // one call at a time: the latency of a call
+    @Benchmark
+    public CodeAuth.TransportResponse call() throws Exception {
+        return check(client.Send(endpoint, "/session/info", body, TIMEOUT_NANOS));
+    }
+
+    // many calls at once: the cost of a call under load
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() {
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) calls[i] = client.SendAsync(endpoint, "/session/info", body, TIMEOUT_NANOS).thenApply(TransportBenchmark::check);
+        CompletableFuture.allOf(calls).join();
+    }
+
+    private static CodeAuth.TransportResponse check(CodeAuth.TransportResponse response) {
+        if (response.status != 200) throw new IllegalStateException("status " + response.status);
+        return response;
+    }
+}
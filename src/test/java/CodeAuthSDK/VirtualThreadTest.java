@@ -0,0 +1,112 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The blocking api, called from many virtual threads at once, must never pin their carrier threads. Since JDK 24
+ * (JEP 491) synchronized no longer pins, so this is a regression guard for the pinning that remains: blocking in a
+ * native frame or a class initializer on the call path. A control thread that blocks in a class initializer checks
+ * that the recording does catch such pinning
+ */
+class VirtualThreadTest {
+    private static final String PROJECT_ID = "project";
+    private static final int SESSIONS = 100;
+    private static final int CALLS = 2000;
+
+    private Emulator emulator;
+
+    // pins the carrier of the virtual thread that first uses it, by blocking in its class initializer
+    private static final class BlocksInInitializer {
+        static {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        static void load() {
+        }
+    }
+
+    @BeforeEach
+    void start() throws Exception {
+        emulator = Emulator.Start(PROJECT_ID, 0, new EmulatorOptions());
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.use_virtual_threads = true;
+        options.use_http2 = false;
+        // every SessionInfo goes to the emulator, through the transport
+        CodeAuth.Initialize(emulator.Endpoint(), PROJECT_ID, false, 30, options);
+    }
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+        emulator.Stop();
+    }
+
+    @Test
+    void concurrentCallsDoNotPinCarrierThreads() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            String email = "user" + i + "@example.com";
+            assertEquals("no_error", CodeAuth.SignInEmail(email).error);
+            CodeAuth.SignInEmailVerifyResult session = CodeAuth.SignInEmailVerify(email, emulator.GetCode(email));
+            assertEquals("no_error", session.error);
+            tokens.add(session.session_token);
+        }
+
+        ConcurrentLinkedQueue<RecordedEvent> pinned = new ConcurrentLinkedQueue<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", pinned::add);
+            recording.startAsync();
+
+            List<Future<String>> calls = new ArrayList<>();
+            try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+                threads.submit(BlocksInInitializer::load).get();
+                for (int i = 0; i < CALLS; i++) {
+                    String token = tokens.get(i % SESSIONS);
+                    // the first call of each session refreshes it, the others read it
+                    boolean refresh = i < SESSIONS;
+                    calls.add(threads.submit(() -> refresh ? CodeAuth.SessionRefresh(token).error : CodeAuth.SessionInfo(token).error));
+                }
+            }
+            for (Future<String> call : calls) {
+                String error = call.get();
+                assertTrue(error.equals("no_error") || error.equals("bad_session_token"), error);
+            }
+            recording.stop();
+        }
+
+        List<RecordedEvent> control = new ArrayList<>();
+        List<RecordedEvent> sdk = new ArrayList<>();
+        for (RecordedEvent event : pinned) (isControl(event) ? control : sdk).add(event);
+        assertFalse(control.isEmpty(), () -> "the control thread was not seen pinned: " + pinned);
+        assertTrue(sdk.isEmpty(), () -> "pinned carrier threads: " + sdk);
+    }
+
+    private static boolean isControl(RecordedEvent event) {
+        if (event.getStackTrace() == null) return false;
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.getMethod().getType().getName().equals(BlocksInInitializer.class.getName())) return true;
+        }
+        return false;
+    }
+}
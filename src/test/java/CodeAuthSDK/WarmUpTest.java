@@ -0,0 +1,144 @@
+package CodeAuthSDK;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * prewarm_connections opens connections during Initialize and WhenReady tells when they are open; keep_warm_interval_ms
+ * warms them again on a timer until Shutdown
+ */
+class WarmUpTest {
+    // a transport whose warm ups stay pending until the test settles them, unless 'reach' is set
+    private static final class WarmingTransport implements CodeAuth.Transport {
+        final List<CompletableFuture<Boolean>> warmUps = new CopyOnWriteArrayList<>();
+        final List<Integer> connections = new CopyOnWriteArrayList<>();
+        volatile boolean reach;
+
+        @Override
+        public CompletableFuture<CodeAuth.TransportResponse> SendAsync(String endpoint, String path, byte[] body, long timeoutNanos) {
+            return CompletableFuture.failedFuture(new IOException("not used"));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> WarmUpAsync(String endpoint, int connections, long timeoutNanos) {
+            CompletableFuture<Boolean> warmUp = reach ? CompletableFuture.completedFuture(true) : new CompletableFuture<>();
+            warmUps.add(warmUp);
+            this.connections.add(connections);
+            return warmUp;
+        }
+    }
+
+    private final WarmingTransport transport = new WarmingTransport();
+
+    @AfterEach
+    void stop() {
+        CodeAuth.Shutdown();
+    }
+
+    private static void start(CodeAuth.Transport transport, int prewarmConnections, int keepWarmIntervalMs) {
+        CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+        options.transport = transport;
+        options.prewarm_connections = prewarmConnections;
+        options.keep_warm_interval_ms = keepWarmIntervalMs;
+        CodeAuth.Initialize("https://example.com", "project", false, 30, options);
+    }
+
+    @Test
+    void isReadyOnceTheConnectionsAreOpen() {
+        start(transport, 3, 0);
+        assertEquals(List.of(3), transport.connections);
+        CompletableFuture<Boolean> ready = CodeAuth.WhenReady();
+        assertFalse(ready.isDone());
+        assertFalse(CodeAuth.IsReady());
+
+        transport.warmUps.get(0).complete(true);
+        assertTrue(ready.join());
+        assertTrue(CodeAuth.IsReady());
+    }
+
+    @Test
+    void isNotReadyWhenTheEndpointCannotBeReached() {
+        start(transport, 3, 0);
+        transport.warmUps.get(0).completeExceptionally(new IOException("connection refused"));
+        assertFalse(CodeAuth.WhenReady().join());
+        assertFalse(CodeAuth.IsReady());
+    }
+
+    @Test
+    void isReadyRightAwayWithoutPrewarming() {
+        start(transport, 0, 0);
+        assertTrue(CodeAuth.WhenReady().isDone());
+        assertTrue(CodeAuth.IsReady());
+        assertEquals(List.of(), transport.warmUps);
+    }
+
+    @Test
+    void keepsWarmUntilShutdown() throws Exception {
+        transport.reach = true;
+        start(transport, 1, 50);
+        Thread.sleep(300);
+        int warmUps = transport.warmUps.size();
+        assertTrue(warmUps >= 3, warmUps + " warm ups");
+
+        CodeAuth.Shutdown();
+        int atShutdown = transport.warmUps.size();
+        Thread.sleep(300);
+        assertEquals(atShutdown, transport.warmUps.size());
+    }
+
+    @Test
+    void skipsATickWhileTheLastWarmUpRuns() throws Exception {
+        start(transport, 1, 50);
+        Thread.sleep(300);
+        // the first one never completed
+        assertEquals(1, transport.warmUps.size());
+    }
+
+    @Test
+    void startsFreshAfterAShutdownDuringAWarmUp() {
+        start(transport, 1, 0);
+        // left running by Shutdown
+        CompletableFuture<Boolean> abandoned = transport.warmUps.get(0);
+        CodeAuth.Shutdown();
+
+        start(transport, 1, 0);
+        assertEquals(2, transport.warmUps.size());
+        CompletableFuture<Boolean> ready = CodeAuth.WhenReady();
+        // the old warm up finishing says nothing about the new one
+        abandoned.complete(false);
+        assertFalse(ready.isDone());
+        transport.warmUps.get(1).complete(true);
+        assertTrue(ready.join());
+        assertTrue(CodeAuth.IsReady());
+    }
+
+    @Test
+    void opensNioConnectionsWithoutSendingARequest() throws Exception {
+        AtomicBoolean sent = new AtomicBoolean();
+        try (ScriptedServer server = new ScriptedServer(connection -> {
+            if (connection.sendsMoreWithin(300)) sent.set(true);
+            connection.awaitClose();
+        })) {
+            CodeAuth.InitializeOptions options = new CodeAuth.InitializeOptions();
+            options.nio_connections = 2;
+            options.prewarm_connections = 2;
+            options.transport = new CodeAuth.NioTransport(options);
+            CodeAuth.Initialize(server.endpoint(), "project", false, 30, options);
+
+            assertTrue(CodeAuth.WhenReady().get(5, TimeUnit.SECONDS));
+            assertEquals(2, server.connections.get());
+            Thread.sleep(400);
+            assertFalse(sent.get());
+        }
+    }
+}